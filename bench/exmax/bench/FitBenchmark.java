@@ -0,0 +1,44 @@
+package exmax.bench;
+
+import exmax.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * exmax.bench.FitBenchmark measures a full fit, from creating the initial model until maximization converges.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class FitBenchmark {
+
+    @Param({"100000"})
+    public int sampleSize;
+
+    @Param({"2", "5"})
+    public int componentSize;
+
+    @Param({"0.2", "0.5"})
+    public double overlap;
+
+    @Param({"1"})
+    public long seed;
+
+    private SampleStore samples;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        samples = new BasicSampleStore(MixtureGenerator.generate(sampleSize, componentSize, overlap, seed));
+        ModelFactory.setTraceCapacity(0);
+        ModelFactory.setSeed(seed);
+    }
+
+    @Benchmark
+    public Model fit() {
+        return ModelFactory.createMaximizedModel(samples, componentSize);
+    }
+}
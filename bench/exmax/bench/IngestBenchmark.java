@@ -0,0 +1,78 @@
+package exmax.bench;
+
+import exmax.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * exmax.bench.IngestBenchmark measures loading samples from a text file and from a binary sample file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class IngestBenchmark {
+
+    @Param({"1000000"})
+    public int sampleSize;
+
+    @Param({"5"})
+    public int componentSize;
+
+    @Param({"0.2"})
+    public double overlap;
+
+    @Param({"1"})
+    public long seed;
+
+    private File textFile;
+
+    private File sampleFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+
+        // Write the samples with two decimals, twelve to a line, like data/sample2.txt.
+        double[] samples = MixtureGenerator.generate(sampleSize, componentSize, overlap, seed);
+        textFile = File.createTempFile("exmax-bench", ".txt");
+        BufferedWriter bw = new BufferedWriter(new FileWriter(textFile));
+        for (int i = 0; i < samples.length; i++) {
+            bw.write(String.format(Locale.ROOT, "%.2f", samples[i]));
+            bw.write(i % 12 == 11 ? "\n" : " ");
+        }
+
+        bw.close();
+
+        sampleFile = File.createTempFile("exmax-bench", ".exmx");
+        SampleFile.convert(textFile.getPath(), sampleFile.getPath());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        textFile.delete();
+        sampleFile.delete();
+    }
+
+    @Benchmark
+    public SampleStore loadText() throws IOException {
+        return Main.loadSampleStore(textFile.getPath());
+    }
+
+    @Benchmark
+    public double loadBinary() throws IOException {
+
+        // Touch every sample, since mapping alone doesn't read the file.
+        SampleStore samples = Main.loadSampleStore(sampleFile.getPath());
+        double sum = 0;
+        for (int i = 0; i < samples.size(); i++) {
+            sum += samples.get(i);
+        }
+
+        return sum;
+    }
+}
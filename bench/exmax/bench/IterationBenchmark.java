@@ -0,0 +1,54 @@
+package exmax.bench;
+
+import exmax.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * exmax.bench.IterationBenchmark measures a single iteration of expectation maximization, which is a
+ * maximization step followed by the expectation step for the new model.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class IterationBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int sampleSize;
+
+    @Param({"2", "5", "10"})
+    public int componentSize;
+
+    @Param({"0.2", "0.5"})
+    public double overlap;
+
+    @Param({"1"})
+    public long seed;
+
+    private Model model;
+
+    private Maximization maximization;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        double[] samples = MixtureGenerator.generate(sampleSize, componentSize, overlap, seed);
+        ModelFactory.setTraceCapacity(0);
+        model = ModelFactory.createModel(new BasicSampleStore(samples), componentSize, seed);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpIteration() {
+
+        // Start from the same model every time, with its statistics already computed.
+        maximization = new Maximization(new BasicModel(model.getComponents(), model.getSampleStore()));
+    }
+
+    @Benchmark
+    public boolean iteration() {
+        return maximization.step();
+    }
+}
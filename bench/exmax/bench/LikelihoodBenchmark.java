@@ -0,0 +1,58 @@
+package exmax.bench;
+
+import exmax.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * exmax.bench.LikelihoodBenchmark measures evaluating component likelihoods, both on their own and as the full
+ * expectation step behind the log likelihood of a model.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class LikelihoodBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int sampleSize;
+
+    @Param({"2", "5", "10"})
+    public int componentSize;
+
+    @Param({"0.2", "0.5"})
+    public double overlap;
+
+    @Param({"1"})
+    public long seed;
+
+    private double[] samples;
+
+    private double[] logLikelihoods;
+
+    private Model model;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        samples = MixtureGenerator.generate(sampleSize, componentSize, overlap, seed);
+        logLikelihoods = new double[sampleSize];
+        ModelFactory.setTraceCapacity(0);
+        model = ModelFactory.createModel(new BasicSampleStore(samples), componentSize, seed);
+    }
+
+    @Benchmark
+    public double[] componentLogLikelihoods() {
+        model.getComponents().get(0).getSampleLogLikelihoods(samples, 0, sampleSize, logLikelihoods);
+        return logLikelihoods;
+    }
+
+    @Benchmark
+    public double logLikelihood() {
+
+        // Use a new model every time, since models cache their statistics.
+        return new BasicModel(model.getComponents(), model.getSampleStore()).getLogLikelihood();
+    }
+}
@@ -0,0 +1,38 @@
+package exmax.bench;
+
+import java.util.Random;
+
+/**
+ * exmax.bench.MixtureGenerator creates synthetic samples from a mixture of evenly weighted Gaussian components,
+ * so that benchmarks can control the size and difficulty of the data.
+ */
+public abstract class MixtureGenerator {
+
+    /**
+     * The distance between the mu values of neighbouring components.
+     */
+    public static final double SPACING = 10;
+
+    /**
+     * Generate samples from a mixture of components whose mu values are {@link #SPACING} apart. The overlap
+     * sets the standard deviation of every component as a fraction of the spacing, so larger overlaps make the
+     * components harder to separate.
+     *
+     * @param sampleSize the number of samples
+     * @param componentSize the number of components
+     * @param overlap the standard deviation of each component as a fraction of the spacing
+     * @param seed the seed for the random samples
+     * @return the samples
+     */
+    public static double[] generate(int sampleSize, int componentSize, double overlap, long seed) {
+
+        Random rand = new Random(seed);
+        double[] samples = new double[sampleSize];
+        for (int i = 0; i < sampleSize; i++) {
+            int k = rand.nextInt(componentSize);
+            samples[i] = (k + 1) * SPACING + rand.nextGaussian() * overlap * SPACING;
+        }
+
+        return samples;
+    }
+}
@@ -0,0 +1,19 @@
+package exmax;
+
+/**
+ * exmax.Acceleration selects how {@link Maximization} moves from one model to the next.
+ */
+public enum Acceleration {
+
+    /**
+     * Take a single step of expectation maximization per iteration.
+     */
+    NONE,
+
+    /**
+     * Take two steps of expectation maximization, extrapolate along the squared difference between them
+     * (SQUAREM), and take one more step from the extrapolated model. The extrapolated model is only kept if it
+     * is at least as good as the second plain step, so the log likelihood never decreases.
+     */
+    SQUAREM
+}
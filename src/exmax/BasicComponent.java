@@ -20,6 +20,21 @@ public class BasicComponent implements Component {
      */
     private double tau;
 
+    /**
+     * The constant that scales the square distance of a sample from mu, which only depends on sigma.
+     */
+    private double exponentScale;
+
+    /**
+     * The constant that normalizes the likelihood, which only depends on sigma.
+     */
+    private double normalizer;
+
+    /**
+     * The logarithm of {@link #normalizer}.
+     */
+    private double logNormalizer;
+
     /**
      * Construct a exmax.BasicComponent by passing a mu, sigma, and tau.
      *
@@ -31,6 +46,7 @@ public class BasicComponent implements Component {
         this.mu = mu;
         this.sigma = sigma;
         this.tau = tau;
+        updateConstants();
     }
 
     /**
@@ -63,6 +79,7 @@ public class BasicComponent implements Component {
     @Override
     public void setSigma(float sigma) {
         this.sigma = sigma;
+        updateConstants();
     }
 
     /**
@@ -85,9 +102,10 @@ public class BasicComponent implements Component {
      * @inheritDoc
      */
     @Override
-    public double getSampleLikelihood(Double sample) {
+    public double getSampleLikelihood(double sample) {
 
-        double l = Math.exp(-1 * Math.pow(sample - mu, 2) / (2 * sigma)) / Math.sqrt(2 * Math.PI * sigma);
+        double d = sample - mu;
+        double l = Math.exp(-d * d * exponentScale) * normalizer;
 
         if (Double.isNaN(l)) {
             return Double.MIN_VALUE;
@@ -95,4 +113,41 @@ public class BasicComponent implements Component {
 
         return l + Double.MIN_VALUE;
     }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public double getWindowRadius(double tolerance) {
+
+        // Both tails beyond c standard deviations together hold at most exp(-c^2 / 2) of the probability.
+        return Math.sqrt(2 * Math.log(1 / tolerance) * sigma);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public double getSampleLogLikelihood(double sample) {
+        double d = sample - mu;
+        return logNormalizer - d * d * exponentScale;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void getSampleLogLikelihoods(double[] samples, int offset, int length, double[] logLikelihoods) {
+        LikelihoodKernels.getKernel().evaluateLog(samples, offset, length, mu, exponentScale, logNormalizer,
+                logLikelihoods);
+    }
+
+    /**
+     * Recompute the constants of the likelihood function that only depend on sigma.
+     */
+    private void updateConstants() {
+        exponentScale = 1 / (2 * sigma);
+        normalizer = 1 / Math.sqrt(2 * Math.PI * sigma);
+        logNormalizer = -Math.log(2 * Math.PI * sigma) / 2;
+    }
 }
@@ -13,15 +13,31 @@ public class BasicModel implements Model {
     private List<Component> components;
 
     /**
-     * List of samples in the model.
+     * Store of samples in the model.
      */
-    private List<Double> samples;
+    private SampleStore sampleStore;
 
     /**
      * The prior model, to keep a linked list of iterated models during expectation maximization.
      */
     private Model priorModel;
 
+    /**
+     * The trace of the iterations of expectation maximization that produced the model.
+     */
+    private IterationTrace iterationTrace;
+
+    /**
+     * The summary of the maximization that produced the model.
+     */
+    private FitSummary fitSummary;
+
+    /**
+     * The statistics from the expectation step, computed when first needed and cleared whenever the
+     * components or samples change.
+     */
+    private SufficientStatistics statistics;
+
     /**
      * Construct a exmax.BasicModel by passing in components and samples.
      *
@@ -29,11 +45,34 @@ public class BasicModel implements Model {
      * @param samples list of samples in the model
      */
     public BasicModel(List<Component> components, List<Double> samples) {
+        this(components, BasicSampleStore.fromList(samples));
+    }
+
+    /**
+     * Construct a exmax.BasicModel by passing in components and a store of samples.
+     *
+     * @param components list of components in the model
+     * @param sampleStore store of samples in the model
+     */
+    public BasicModel(List<Component> components, SampleStore sampleStore) {
         this.components = components;
-        this.samples = samples;
+        this.sampleStore = sampleStore;
         this.priorModel = null;
     }
 
+    /**
+     * Construct a exmax.BasicModel by passing in components, a store of samples and the statistics of the
+     * expectation step for them, when they are already known.
+     *
+     * @param components list of components in the model
+     * @param sampleStore store of samples in the model
+     * @param statistics the statistics of the samples for the components
+     */
+    public BasicModel(List<Component> components, SampleStore sampleStore, SufficientStatistics statistics) {
+        this(components, sampleStore);
+        this.statistics = statistics;
+    }
+
     /**
      * @inheritDoc
      */
@@ -46,8 +85,9 @@ public class BasicModel implements Model {
      * @inheritDoc
      */
     @Override
-    public void setComponents(List<Component> components) {
+    public synchronized void setComponents(List<Component> components) {
         this.components = components;
+        this.statistics = null;
     }
 
     /**
@@ -58,12 +98,29 @@ public class BasicModel implements Model {
         return components.size();
     }
 
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public SampleStore getSampleStore() {
+        return sampleStore;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public synchronized void setSampleStore(SampleStore sampleStore) {
+        this.sampleStore = sampleStore;
+        this.statistics = null;
+    }
+
     /**
      * @inheritDoc
      */
     @Override
     public List<Double> getSamples() {
-        return samples;
+        return sampleStore.asList();
     }
 
     /**
@@ -71,15 +128,25 @@ public class BasicModel implements Model {
      */
     @Override
     public void setSamples(List<Double> samples) {
-        this.samples = samples;
+        setSampleStore(BasicSampleStore.fromList(samples));
     }
 
     /**
      * @inheritDoc
      */
     @Override
-    public int getSampleSize() {
-        return samples.size();
+    public long getSampleSize() {
+
+        // Count weighted samples as the number of samples they stand for.
+        if (sampleStore instanceof WeightedSampleStore) {
+            return Math.round(((WeightedSampleStore) sampleStore).getTotalWeight());
+        }
+
+        if (sampleStore instanceof SegmentedSampleStore) {
+            return ((SegmentedSampleStore) sampleStore).getLongSize();
+        }
+
+        return sampleStore.size();
     }
 
     /**
@@ -102,14 +169,52 @@ public class BasicModel implements Model {
      * @inheritDoc
      */
     @Override
-    public double getRelativeSampleLikelihood(Double sample, Component component) {
+    public IterationTrace getIterationTrace() {
+        return iterationTrace;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void setIterationTrace(IterationTrace iterationTrace) {
+        this.iterationTrace = iterationTrace;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public FitSummary getFitSummary() {
+        return fitSummary;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void setFitSummary(FitSummary fitSummary) {
+        this.fitSummary = fitSummary;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public double getRelativeSampleLikelihood(double sample, Component component) {
+
+        // Work in log space, factoring the largest component out of the total so that it can't underflow.
+        double m = Double.NEGATIVE_INFINITY;
+        for (Component c : getComponents()) {
+            m = Math.max(m, c.getSampleLogLikelihood(sample) + Math.log(c.getTau()));
+        }
 
         double t = 0;
         for (Component c : getComponents()) {
-            t += c.getSampleLikelihood(sample) * c.getTau();
+            t += Math.exp(c.getSampleLogLikelihood(sample) + Math.log(c.getTau()) - m);
         }
 
-        double l = component.getSampleLikelihood(sample) * component.getTau() / t;
+        double l = Math.exp(component.getSampleLogLikelihood(sample) + Math.log(component.getTau()) - m) / t;
         if (Double.isNaN(l)) {
             return 0;
         }
@@ -121,20 +226,20 @@ public class BasicModel implements Model {
      * @inheritDoc
      */
     @Override
-    public double getLogLikelihood() {
-
-        double l = 0;
-        for (Double sample : getSamples()) {
-            double c = 1;
-            for (Component component : getComponents()) {
-                c *= Math.pow(component.getTau() * component.getSampleLikelihood(sample),
-                        getRelativeSampleLikelihood(sample, component));
-            }
-
-            l += Math.log(c);
+    public synchronized SufficientStatistics getSufficientStatistics() {
+        if (statistics == null) {
+            statistics = ModelFactory.computeSufficientStatistics(components, sampleStore);
         }
 
-        return l;
+        return statistics;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public double getLogLikelihood() {
+        return getSufficientStatistics().getLogLikelihood();
     }
 
     /**
@@ -168,6 +273,25 @@ public class BasicModel implements Model {
         sb.append("------------------------------------------------" + System.lineSeparator());
         sb.append("Iterations:" + System.lineSeparator());
 
+        // Prefer the iteration trace, newest first, and fall back to walking the prior models.
+        IterationTrace trace = getIterationTrace();
+        if (trace != null) {
+            for (int t = trace.size() - 1; t >= 0; t--) {
+                sb.append(trace.getIteration(t) + ". ");
+                for (int k = 0; k < trace.getComponentSize(); k++) {
+                    sb.append("Mu" + (k + 1) + "=" + String.format("%.1f", trace.getMu(t, k)) + " ");
+                }
+                sb.append("Lk=" + String.format("%.3f", trace.getLogLikelihood(t)) + System.lineSeparator());
+            }
+
+            if (trace.getIterationCount() > trace.size()) {
+                sb.append("(" + (trace.getIterationCount() - trace.size()) + " earlier iterations not retained)" +
+                        System.lineSeparator());
+            }
+
+            return sb.toString();
+        }
+
         int j = 1;
         Model model = this;
         while (model.getPriorModel() != null) {
@@ -175,7 +299,6 @@ public class BasicModel implements Model {
             j++;
         }
 
-
         model = this;
         while (j > 0) {
             sb.append(j + ". ");
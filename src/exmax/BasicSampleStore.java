@@ -0,0 +1,137 @@
+package exmax;
+
+import java.util.List;
+
+/**
+ * exmax.BasicSampleStore provides a straightforward in memory implementation of a exmax.SampleStore, backed by
+ * a primitive double array.
+ */
+public class BasicSampleStore implements SampleStore {
+
+    /**
+     * The array that backs the store, which may be shared with other stores that are ranges of it.
+     */
+    private final double[] values;
+
+    /**
+     * The index in the backing array of the first sample in the store.
+     */
+    private final int offset;
+
+    /**
+     * The number of samples in the store.
+     */
+    private final int length;
+
+    /**
+     * Construct a exmax.BasicSampleStore by passing in an array of samples. The array is not copied, so it
+     * shouldn't be modified after the store is created.
+     *
+     * @param values the array of samples
+     */
+    public BasicSampleStore(double[] values) {
+        this(values, 0, values.length);
+    }
+
+    /**
+     * Construct a exmax.BasicSampleStore by passing in an array of samples and the range of the array to use.
+     * The array is not copied, so it shouldn't be modified after the store is created.
+     *
+     * @param values the array of samples
+     * @param offset the index of the first sample in the array
+     * @param length the number of samples to use from the array
+     */
+    public BasicSampleStore(double[] values, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > values.length) {
+            throw new IndexOutOfBoundsException("Range " + offset + "+" + length + " is outside of " + values.length);
+        }
+
+        this.values = values;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Create a exmax.BasicSampleStore by unboxing a list of samples.
+     *
+     * @param samples the list of samples
+     * @return a store containing a copy of the samples
+     */
+    public static SampleStore fromList(List<Double> samples) {
+
+        // Avoid a copy if the list is already a view of a store.
+        if (samples instanceof SampleStoreList) {
+            return ((SampleStoreList) samples).getSampleStore();
+        }
+
+        double[] values = new double[samples.size()];
+        int i = 0;
+        for (Double sample : samples) {
+            values[i++] = sample;
+        }
+
+        return new BasicSampleStore(values);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public int size() {
+        return length;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public double get(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " is outside of " + length);
+        }
+
+        return values[offset + index];
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public SampleStore range(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > length || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Range " + fromIndex + "-" + toIndex + " is outside of " + length);
+        }
+
+        return new BasicSampleStore(values, offset + fromIndex, toIndex - fromIndex);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void copyTo(int index, double[] destination, int destinationIndex, int length) {
+        if (index < 0 || length < 0 || index + length > this.length) {
+            throw new IndexOutOfBoundsException("Range " + index + "+" + length + " is outside of " + this.length);
+        }
+
+        System.arraycopy(values, offset + index, destination, destinationIndex, length);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public double[] toArray() {
+        double[] copy = new double[length];
+        System.arraycopy(values, offset, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public List<Double> asList() {
+        return new SampleStoreList(this);
+    }
+}
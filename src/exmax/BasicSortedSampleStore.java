@@ -0,0 +1,90 @@
+package exmax;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * exmax.BasicSortedSampleStore provides a straightforward in memory implementation of a exmax.SortedSampleStore,
+ * backed by a primitive double array in ascending order.
+ */
+public class BasicSortedSampleStore implements SortedSampleStore {
+
+    /**
+     * The store that holds the sorted samples.
+     */
+    private final SampleStore sampleStore;
+
+    /**
+     * Construct a exmax.BasicSortedSampleStore by wrapping a store whose samples are already sorted.
+     *
+     * @param sampleStore the store of samples in ascending order
+     */
+    private BasicSortedSampleStore(SampleStore sampleStore) {
+        this.sampleStore = sampleStore;
+    }
+
+    /**
+     * Create a exmax.BasicSortedSampleStore by copying and sorting a store of samples.
+     *
+     * @param samples the store of samples
+     * @return a store of the same samples in ascending order
+     */
+    public static SortedSampleStore sort(SampleStore samples) {
+
+        if (samples instanceof SortedSampleStore) {
+            return (SortedSampleStore) samples;
+        }
+
+        double[] sorted = samples.toArray();
+        Arrays.sort(sorted);
+        return new BasicSortedSampleStore(new BasicSampleStore(sorted));
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public int size() {
+        return sampleStore.size();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public double get(int index) {
+        return sampleStore.get(index);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public SampleStore range(int fromIndex, int toIndex) {
+        return new BasicSortedSampleStore(sampleStore.range(fromIndex, toIndex));
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void copyTo(int index, double[] destination, int destinationIndex, int length) {
+        sampleStore.copyTo(index, destination, destinationIndex, length);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public double[] toArray() {
+        return sampleStore.toArray();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public List<Double> asList() {
+        return new SampleStoreList(this);
+    }
+}
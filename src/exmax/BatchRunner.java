@@ -0,0 +1,400 @@
+package exmax;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * exmax.BatchRunner fits models to many input files in one JVM. Each file is loaded, fit and written on its own
+ * task, on a virtual thread when the JVM has them, while the fits themselves run on a pool bounded by the number
+ * of fits allowed at the same time. Only as many files as that are loaded at once, so a long batch doesn't hold
+ * every file in memory. A file that fails is reported in its result without stopping the others.
+ */
+public class BatchRunner {
+
+    /**
+     * The suffix added to the name of each input file to name its output file.
+     */
+    public static final String OUTPUT_SUFFIX = ".models.txt";
+
+    /**
+     * The largest number of components to fit for each file, as in a single file run.
+     */
+    private final int modelSize;
+
+    /**
+     * The number of fits that run at the same time.
+     */
+    private final int fitParallelism;
+
+    /**
+     * Construct a exmax.BatchRunner by passing in the largest number of components and how many fits can run at
+     * the same time.
+     *
+     * @param modelSize the largest number of components to fit for each file, greater than or equal to 2
+     * @param fitParallelism the number of fits that run at the same time, greater than or equal to 1
+     */
+    public BatchRunner(int modelSize, int fitParallelism) {
+        if (fitParallelism < 1) {
+            throw new IllegalArgumentException("Fit parallelism must be at least 1, but was " + fitParallelism);
+        }
+
+        this.modelSize = modelSize;
+        this.fitParallelism = fitParallelism;
+    }
+
+    /**
+     * List the input files for a batch. A directory lists the regular files in it, in name order. Any other
+     * file is a manifest with the path of an input file on each line, relative to the manifest, where blank
+     * lines and lines starting with # are skipped.
+     *
+     * @param path the path of the directory or manifest
+     * @return the list of input file paths
+     * @throws IOException
+     */
+    public static List<String> listInputs(String path) throws IOException {
+
+        Path inputPath = Paths.get(path);
+        List<String> inputs = new ArrayList<String>();
+        if (Files.isDirectory(inputPath)) {
+            DirectoryStream<Path> stream = Files.newDirectoryStream(inputPath);
+            try {
+                for (Path file : stream) {
+                    if (Files.isRegularFile(file)) {
+                        inputs.add(file.toString());
+                    }
+                }
+
+            } finally {
+                stream.close();
+            }
+
+            Collections.sort(inputs);
+            return inputs;
+        }
+
+        Path parent = inputPath.toAbsolutePath().getParent();
+        for (String line : Files.readAllLines(inputPath)) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                inputs.add(parent.resolve(line).toString());
+            }
+        }
+
+        return inputs;
+    }
+
+    /**
+     * Fit models to each input file and write them to a file of the same name plus {@link #OUTPUT_SUFFIX} in the
+     * output directory, waiting until every file is done.
+     *
+     * @param inputPaths the paths of the input files
+     * @param outputDirectory the path of the directory for output files, created if it doesn't exist
+     * @return the summary of the batch, with a result for each input file in the same order
+     * @throws IOException if the output directory can't be created
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public Summary run(List<String> inputPaths, String outputDirectory) throws IOException, InterruptedException {
+
+        final Path outputPath = Files.createDirectories(Paths.get(outputDirectory));
+        final ExecutorService fitExecutor = Executors.newFixedThreadPool(fitParallelism);
+        final Semaphore loadPermits = new Semaphore(fitParallelism);
+        ExecutorService taskExecutor = newTaskExecutor(fitParallelism);
+        long start = System.nanoTime();
+
+        try {
+            List<Future<Result>> futures = new ArrayList<Future<Result>>();
+            for (final String inputPath : inputPaths) {
+                futures.add(taskExecutor.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() {
+                        return process(inputPath, outputPath, fitExecutor, loadPermits);
+                    }
+                }));
+            }
+
+            List<Result> results = new ArrayList<Result>();
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                }
+
+                catch (ExecutionException ex) {
+                    throw new IllegalStateException("Batch task failed outside of its file", ex.getCause());
+                }
+            }
+
+            return new Summary(results, System.nanoTime() - start);
+
+        } finally {
+            taskExecutor.shutdownNow();
+            fitExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Load, fit and write a single input file, turning any failure into a failed result.
+     *
+     * @param inputPath the path of the input file
+     * @param outputDirectory the directory for output files
+     * @param fitExecutor the pool that runs the fits
+     * @param loadPermits the permits for files held in memory, one of which is held from loading until writing
+     * @return the result for the file
+     */
+    private Result process(String inputPath, Path outputDirectory, ExecutorService fitExecutor,
+                           Semaphore loadPermits) {
+
+        long start = System.nanoTime();
+        String outputPath = outputDirectory.resolve(Paths.get(inputPath).getFileName() + OUTPUT_SUFFIX).toString();
+        long sampleSize = 0;
+        boolean permitted = false;
+        try {
+
+            // Load on this task, so waiting on storage doesn't hold up a fit, but only once a fit could take it.
+            loadPermits.acquire();
+            permitted = true;
+            start = System.nanoTime();
+            final SampleStore samples = Main.loadSampleStore(inputPath, 1);
+            sampleSize = samples instanceof SegmentedSampleStore ?
+                    ((SegmentedSampleStore) samples).getLongSize() : samples.size();
+
+            // Fit on the bounded pool.
+            List<Model> models = fitExecutor.submit(new Callable<List<Model>>() {
+                @Override
+                public List<Model> call() {
+                    return ModelFactory.createMaximizedModels(samples, modelSize);
+                }
+            }).get();
+
+            BufferedWriter bw = new BufferedWriter(new FileWriter(outputPath));
+            try {
+                for (Model model : models) {
+                    bw.write(model.toString());
+                }
+
+            } finally {
+                bw.close();
+            }
+
+            return new Result(inputPath, outputPath, sampleSize, System.nanoTime() - start, null);
+
+        } catch (ExecutionException ex) {
+            return new Result(inputPath, outputPath, sampleSize, System.nanoTime() - start, ex.getCause());
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return new Result(inputPath, outputPath, sampleSize, System.nanoTime() - start, ex);
+
+        } catch (Exception ex) {
+            return new Result(inputPath, outputPath, sampleSize, System.nanoTime() - start, ex);
+
+        } finally {
+            if (permitted) {
+                loadPermits.release();
+            }
+        }
+    }
+
+    /**
+     * Create the executor for the per file tasks, which start a virtual thread per task on JVMs that have them.
+     * It is looked up by reflection so that the same build runs on older JVMs, which fall back to a fixed pool
+     * of platform threads, since no more files than there are fits can be loaded at once anyway.
+     *
+     * @param fitParallelism the number of fits that run at the same time
+     * @return the executor for per file tasks
+     */
+    private static ExecutorService newTaskExecutor(int fitParallelism) {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        }
+
+        catch (ReflectiveOperationException ex) {
+            return Executors.newFixedThreadPool(fitParallelism);
+        }
+    }
+
+    /**
+     * exmax.BatchRunner.Result holds the outcome of processing a single input file.
+     */
+    public static class Result {
+
+        /**
+         * The path of the input file.
+         */
+        private final String inputPath;
+
+        /**
+         * The path of the output file.
+         */
+        private final String outputPath;
+
+        /**
+         * The number of samples loaded from the input file.
+         */
+        private final long sampleSize;
+
+        /**
+         * The wall time taken to process the file once it could be loaded, in nanoseconds.
+         */
+        private final long nanos;
+
+        /**
+         * The reason the file failed, or null if it succeeded.
+         */
+        private final Throwable failure;
+
+        /**
+         * Construct a exmax.BatchRunner.Result by passing in the outcome of processing a file.
+         *
+         * @param inputPath the path of the input file
+         * @param outputPath the path of the output file
+         * @param sampleSize the number of samples loaded from the input file
+         * @param nanos the wall time taken to process the file once it could be loaded, in nanoseconds
+         * @param failure the reason the file failed, or null if it succeeded
+         */
+        public Result(String inputPath, String outputPath, long sampleSize, long nanos, Throwable failure) {
+            this.inputPath = inputPath;
+            this.outputPath = outputPath;
+            this.sampleSize = sampleSize;
+            this.nanos = nanos;
+            this.failure = failure;
+        }
+
+        /**
+         * Gets the path of the input file.
+         *
+         * @return the input path
+         */
+        public String getInputPath() {
+            return inputPath;
+        }
+
+        /**
+         * Gets the path of the output file, which only exists if the file succeeded.
+         *
+         * @return the output path
+         */
+        public String getOutputPath() {
+            return outputPath;
+        }
+
+        /**
+         * Gets the number of samples loaded from the input file.
+         *
+         * @return the number of samples, or 0 if they couldn't be loaded
+         */
+        public long getSampleSize() {
+            return sampleSize;
+        }
+
+        /**
+         * Gets the wall time taken to process the file once it could be loaded, in nanoseconds.
+         *
+         * @return the time taken
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Gets the reason the file failed.
+         *
+         * @return the failure, or null if the file succeeded
+         */
+        public Throwable getFailure() {
+            return failure;
+        }
+
+        /**
+         * Gets whether the file succeeded.
+         *
+         * @return true if the output file was written
+         */
+        public boolean isSucceeded() {
+            return failure == null;
+        }
+    }
+
+    /**
+     * exmax.BatchRunner.Summary holds the results of a batch and how long it took.
+     */
+    public static class Summary {
+
+        /**
+         * The result for each input file.
+         */
+        private final List<Result> results;
+
+        /**
+         * The wall time taken by the whole batch, in nanoseconds.
+         */
+        private final long nanos;
+
+        /**
+         * Construct a exmax.BatchRunner.Summary by passing in the results and how long the batch took.
+         *
+         * @param results the result for each input file
+         * @param nanos the wall time taken by the whole batch, in nanoseconds
+         */
+        public Summary(List<Result> results, long nanos) {
+            this.results = results;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Gets the result for each input file, in the order of the input files.
+         *
+         * @return the list of results
+         */
+        public List<Result> getResults() {
+            return results;
+        }
+
+        /**
+         * Gets the wall time taken by the whole batch, in nanoseconds.
+         *
+         * @return the time taken
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Gets the number of files that failed.
+         *
+         * @return the number of failed files
+         */
+        public int getFailedSize() {
+            int failed = 0;
+            for (Result result : results) {
+                if (!result.isSucceeded()) {
+                    failed++;
+                }
+            }
+
+            return failed;
+        }
+
+        /**
+         * @inheritDoc
+         */
+        @Override
+        public String toString() {
+            long sampleSize = 0;
+            for (Result result : results) {
+                sampleSize += result.getSampleSize();
+            }
+
+            double seconds = nanos / 1e9;
+            return "Processed " + results.size() + " files (" + (results.size() - getFailedSize()) + " succeeded, " +
+                    getFailedSize() + " failed) and " + sampleSize + " samples in " +
+                    String.format("%.3f", seconds) + " s, " + String.format("%.1f", results.size() / seconds) +
+                    " files/s, " + String.format("%.0f", sampleSize / seconds) + " samples/s";
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package exmax;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * exmax.BinnedSampleStore provides a exmax.WeightedSampleStore backed by primitive arrays of distinct values and
+ * their counts, created by deduplicating or binning another store of samples. Values are in ascending order, so
+ * it is also a exmax.SortedSampleStore.
+ */
+public class BinnedSampleStore implements WeightedSampleStore, SortedSampleStore {
+
+    /**
+     * The distinct values, or the mean of the samples in each bin, in ascending order.
+     */
+    private final double[] values;
+
+    /**
+     * The weight of each value.
+     */
+    private final double[] weights;
+
+    /**
+     * The index in the backing arrays of the first sample in the store.
+     */
+    private final int offset;
+
+    /**
+     * The number of samples in the store.
+     */
+    private final int length;
+
+    /**
+     * The sum of the weights in the store, computed when first needed.
+     */
+    private double totalWeight;
+
+    /**
+     * Construct a exmax.BinnedSampleStore by passing in values in ascending order and their weights. The arrays
+     * are not copied, so they shouldn't be modified after the store is created.
+     *
+     * @param values the values
+     * @param weights the weight of each value
+     */
+    public BinnedSampleStore(double[] values, double[] weights) {
+        this(values, weights, 0, values.length);
+    }
+
+    /**
+     * Construct a exmax.BinnedSampleStore by passing in values, their weights and the range of the arrays to use.
+     *
+     * @param values the values
+     * @param weights the weight of each value
+     * @param offset the index of the first value in the arrays
+     * @param length the number of values to use from the arrays
+     */
+    public BinnedSampleStore(double[] values, double[] weights, int offset, int length) {
+        if (values.length != weights.length) {
+            throw new IllegalArgumentException("There are " + values.length + " values but " + weights.length +
+                    " weights");
+        }
+
+        if (offset < 0 || length < 0 || offset + length > values.length) {
+            throw new IndexOutOfBoundsException("Range " + offset + "+" + length + " is outside of " + values.length);
+        }
+
+        this.values = values;
+        this.weights = weights;
+        this.offset = offset;
+        this.length = length;
+        this.totalWeight = -1;
+    }
+
+    /**
+     * Create a exmax.BinnedSampleStore from a store of samples. With a bin width of 0 identical samples are
+     * merged, otherwise samples are grouped into bins of the given width starting from 0, and each bin is
+     * represented by the mean of its samples so that the weighted mean of the store is unchanged.
+     *
+     * @param samples the store of samples
+     * @param binWidth the width of a bin, or 0 to merge only identical samples
+     * @return a store of the distinct values or bins, weighted by their number of samples
+     */
+    public static BinnedSampleStore bin(SampleStore samples, double binWidth) {
+        if (!(binWidth >= 0)) {
+            throw new IllegalArgumentException("Bin width must be at least 0, but was " + binWidth);
+        }
+
+        double[] sorted = samples.toArray();
+        Arrays.sort(sorted);
+
+        double[] values = new double[Math.min(sorted.length, 16)];
+        double[] weights = new double[values.length];
+        int size = 0;
+
+        int i = 0;
+        while (i < sorted.length) {
+
+            // Take every sample that is identical or in the same bin as the first one.
+            int j = i + 1;
+            if (binWidth == 0) {
+                while (j < sorted.length && Double.compare(sorted[j], sorted[i]) == 0) {
+                    j++;
+                }
+            } else {
+                double bin = Math.floor(sorted[i] / binWidth);
+                while (j < sorted.length && Math.floor(sorted[j] / binWidth) == bin) {
+                    j++;
+                }
+            }
+
+            double sum = 0;
+            for (int k = i; k < j; k++) {
+                sum += sorted[k];
+            }
+
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+
+            values[size] = binWidth == 0 ? sorted[i] : sum / (j - i);
+            weights[size] = j - i;
+            size++;
+            i = j;
+        }
+
+        return new BinnedSampleStore(Arrays.copyOf(values, size), Arrays.copyOf(weights, size));
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public int size() {
+        return length;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public double get(int index) {
+        return values[offset + checkIndex(index)];
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public double getWeight(int index) {
+        return weights[offset + checkIndex(index)];
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public synchronized double getTotalWeight() {
+        if (totalWeight < 0) {
+            double total = 0;
+            for (int i = offset; i < offset + length; i++) {
+                total += weights[i];
+            }
+
+            totalWeight = total;
+        }
+
+        return totalWeight;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public SampleStore range(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > length || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Range " + fromIndex + "-" + toIndex + " is outside of " + length);
+        }
+
+        return new BinnedSampleStore(values, weights, offset + fromIndex, toIndex - fromIndex);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void copyTo(int index, double[] destination, int destinationIndex, int length) {
+        checkRange(index, length);
+        System.arraycopy(values, offset + index, destination, destinationIndex, length);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void copyWeightsTo(int index, double[] destination, int destinationIndex, int length) {
+        checkRange(index, length);
+        System.arraycopy(weights, offset + index, destination, destinationIndex, length);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public double[] toArray() {
+        return Arrays.copyOfRange(values, offset, offset + length);
+    }
+
+    /**
+     * Gets a list view of the distinct values or bins in the store, without their weights.
+     *
+     * @return an unmodifiable list that reads through to the store
+     */
+    @Override
+    public List<Double> asList() {
+        return new SampleStoreList(this);
+    }
+
+    /**
+     * Check that an index refers to a sample in the store.
+     *
+     * @param index the index of the sample
+     * @return the index
+     */
+    private int checkIndex(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " is outside of " + length);
+        }
+
+        return index;
+    }
+
+    /**
+     * Check that a range of samples is in the store.
+     *
+     * @param index the index of the first sample
+     * @param length the number of samples
+     */
+    private void checkRange(int index, int length) {
+        if (index < 0 || length < 0 || index + length > this.length) {
+            throw new IndexOutOfBoundsException("Range " + index + "+" + length + " is outside of " + this.length);
+        }
+    }
+}
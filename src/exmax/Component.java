@@ -53,6 +53,46 @@ public interface Component {
      * @param sample the sample value
      * @return the likelihood of the sample occurring in the component, between the smallest double value and 1
      */
-    double getSampleLikelihood(Double sample);
+    double getSampleLikelihood(double sample);
+
+    /**
+     * Gets the distance from mu beyond which samples hold less than the specified fraction of the probability
+     * of the component, so that the component can be ignored for samples further away. The default is infinite,
+     * so the component is never ignored unless an implementation knows the shape of its tails.
+     *
+     * @param tolerance the fraction of the probability that may be ignored, between 0 and 1
+     * @return the distance from mu
+     */
+    default double getWindowRadius(double tolerance) {
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Gets the logarithm of the likelihood of a sample occurring in the single component. The default takes the
+     * logarithm of {@link #getSampleLikelihood(double)}, so implementations should override it to compute the
+     * logarithm directly, which doesn't underflow for samples far from the component.
+     *
+     * @param sample the sample value
+     * @return the log likelihood of the sample occurring in the component
+     */
+    default double getSampleLogLikelihood(double sample) {
+        return Math.log(getSampleLikelihood(sample));
+    }
+
+    /**
+     * Gets the logarithm of the likelihood of each sample in a range of an array occurring in the single
+     * component. The default calls {@link #getSampleLogLikelihood(double)} for each sample. Implementations
+     * that evaluate several samples at once give the same results apart from rounding in the last bit.
+     *
+     * @param samples the array of samples
+     * @param offset the index of the first sample
+     * @param length the number of samples
+     * @param logLikelihoods the array to write the log likelihoods to, starting at index 0
+     */
+    default void getSampleLogLikelihoods(double[] samples, int offset, int length, double[] logLikelihoods) {
+        for (int i = 0; i < length; i++) {
+            logLikelihoods[i] = getSampleLogLikelihood(samples[offset + i]);
+        }
+    }
 
 }
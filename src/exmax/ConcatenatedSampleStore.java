@@ -0,0 +1,241 @@
+package exmax;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * exmax.ConcatenatedSampleStore provides a exmax.SegmentedSampleStore that reads through to other stores one after
+ * another, without copying their samples. Each segment of a part that is itself segmented is a segment of the
+ * concatenation, and any other part is a single segment, so the expectation step runs over each part in place.
+ * Nested concatenations are flattened, so concatenating repeatedly doesn't deepen the lookups.
+ */
+public class ConcatenatedSampleStore implements SegmentedSampleStore {
+
+    /**
+     * The stores of samples, in order, none of them empty or concatenations.
+     */
+    private final SampleStore[] parts;
+
+    /**
+     * The index of the first sample of each part, followed by the total number of samples.
+     */
+    private final long[] starts;
+
+    /**
+     * The segments of every part, in order.
+     */
+    private final List<SampleStore> segments;
+
+    /**
+     * Construct a exmax.ConcatenatedSampleStore by passing in the stores to read through to.
+     *
+     * @param parts the stores of samples, in order
+     */
+    public ConcatenatedSampleStore(SampleStore... parts) {
+
+        List<SampleStore> flattened = new ArrayList<SampleStore>();
+        for (SampleStore part : parts) {
+            if (part instanceof ConcatenatedSampleStore) {
+                for (SampleStore nested : ((ConcatenatedSampleStore) part).parts) {
+                    flattened.add(nested);
+                }
+            } else if (sizeOf(part) > 0) {
+                flattened.add(part);
+            }
+        }
+
+        this.parts = flattened.toArray(new SampleStore[flattened.size()]);
+        this.starts = new long[this.parts.length + 1];
+        this.segments = new ArrayList<SampleStore>();
+        for (int p = 0; p < this.parts.length; p++) {
+            SampleStore part = this.parts[p];
+            starts[p + 1] = starts[p] + sizeOf(part);
+            if (part instanceof SegmentedSampleStore) {
+                SegmentedSampleStore segmentedPart = (SegmentedSampleStore) part;
+                for (int s = 0; s < segmentedPart.getSegmentCount(); s++) {
+                    segments.add(segmentedPart.getSegment(s));
+                }
+            } else {
+                segments.add(part);
+            }
+        }
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public long getLongSize() {
+        return starts[parts.length];
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public double getSample(long index) {
+        if (index < 0 || index >= getLongSize()) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + getLongSize());
+        }
+
+        int p = findPart(index);
+        SampleStore part = parts[p];
+        long partIndex = index - starts[p];
+        return part instanceof SegmentedSampleStore ?
+                ((SegmentedSampleStore) part).getSample(partIndex) : part.get((int) partIndex);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public SampleStore getSegment(int segment) {
+        return segments.get(segment);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public SegmentedSampleStore getRange(long fromIndex, long toIndex) {
+        if (fromIndex < 0 || toIndex > getLongSize() || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Range " + fromIndex + " to " + toIndex + " of " + getLongSize());
+        }
+
+        // Take the covered range of each part that overlaps the range.
+        List<SampleStore> ranges = new ArrayList<SampleStore>();
+        for (int p = 0; p < parts.length; p++) {
+            long from = Math.max(fromIndex, starts[p]);
+            long to = Math.min(toIndex, starts[p + 1]);
+            if (from < to) {
+                ranges.add(rangeOf(parts[p], from - starts[p], to - starts[p]));
+            }
+        }
+
+        return new ConcatenatedSampleStore(ranges.toArray(new SampleStore[ranges.size()]));
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public int size() {
+        if (getLongSize() > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Store has " + getLongSize() + " samples, more than an int can index");
+        }
+
+        return (int) getLongSize();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public double get(int index) {
+        return getSample(index);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public SampleStore range(int fromIndex, int toIndex) {
+        return getRange(fromIndex, toIndex);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void copyTo(int index, double[] destination, int destinationIndex, int length) {
+        if (index < 0 || length < 0 || index > size() - length) {
+            throw new IndexOutOfBoundsException("Range " + index + " to " + (index + length) + " of " + size());
+        }
+
+        // Copy from each part that the range covers in turn.
+        int p = length > 0 ? findPart(index) : parts.length;
+        while (length > 0) {
+            int partIndex = (int) (index - starts[p]);
+            int count = (int) Math.min(length, starts[p + 1] - index);
+            parts[p].copyTo(partIndex, destination, destinationIndex, count);
+            index += count;
+            destinationIndex += count;
+            length -= count;
+            p++;
+        }
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public double[] toArray() {
+        double[] samples = new double[size()];
+        copyTo(0, samples, 0, samples.length);
+        return samples;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public List<Double> asList() {
+        return new SampleStoreList(this);
+    }
+
+    /**
+     * Find the part that holds a sample.
+     *
+     * @param index the index of the sample, from 0 to {@link #getLongSize()} exclusive
+     * @return the index of the part
+     */
+    private int findPart(long index) {
+        int low = 0;
+        int high = parts.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (starts[middle] <= index) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Gets the number of samples in a store, however many there are.
+     *
+     * @param samples the store of samples
+     * @return the number of samples
+     */
+    private static long sizeOf(SampleStore samples) {
+        return samples instanceof SegmentedSampleStore ?
+                ((SegmentedSampleStore) samples).getLongSize() : samples.size();
+    }
+
+    /**
+     * Gets a view of a range of a store, by long indexes if the store is segmented.
+     *
+     * @param samples the store of samples
+     * @param fromIndex the index of the first sample in the range, inclusive
+     * @param toIndex the index of the last sample in the range, exclusive
+     * @return a store that reads through to the range
+     */
+    private static SampleStore rangeOf(SampleStore samples, long fromIndex, long toIndex) {
+        if (samples instanceof SegmentedSampleStore) {
+            return ((SegmentedSampleStore) samples).getRange(fromIndex, toIndex);
+        }
+
+        return samples.range((int) fromIndex, (int) toIndex);
+    }
+}
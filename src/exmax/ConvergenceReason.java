@@ -0,0 +1,25 @@
+package exmax;
+
+/**
+ * exmax.ConvergenceReason describes why {@link Maximization} stopped improving a model. Every reason but
+ * {@link #PRUNED} means the maximization converged.
+ */
+public enum ConvergenceReason {
+
+    /**
+     * The last iteration improved the log likelihood by no more than the minimum significant delta.
+     */
+    DELTA,
+
+    /**
+     * The Aitken extrapolation of the log likelihood predicted no more than the minimum significant delta
+     * of improvement remaining.
+     */
+    AITKEN,
+
+    /**
+     * The maximization was a restart that was dropped before converging, because other restarts had better log
+     * likelihoods.
+     */
+    PRUNED
+}
@@ -0,0 +1,126 @@
+package exmax;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * exmax.ExpectationTask runs the expectation step over a range of samples on a fork/join pool. The range is
+ * split in half until it is no larger than the chunk size, each chunk computes its own partial statistics,
+ * and the halves are added back together as a tree. The split points and the order of the additions only
+ * depend on the chunk size, so the result is the same for any parallelism. Each chunk measures what its thread
+ * allocated while computing it, and the measurements are added up with the statistics, so a fit only counts
+ * its own allocations even when fits share the pool.
+ */
+public class ExpectationTask extends RecursiveTask<SufficientStatistics> {
+
+    /**
+     * The version of the serialized form, which tasks inherit from java.util.concurrent.ForkJoinTask.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The components in the model.
+     */
+    private final List<Component> components;
+
+    /**
+     * The range of samples that the task is responsible for.
+     */
+    private final SampleStore samples;
+
+    /**
+     * The maximum number of samples to compute without splitting further.
+     */
+    private final int chunkSize;
+
+    /**
+     * Construct a exmax.ExpectationTask by passing in components, samples and a chunk size.
+     *
+     * @param components the components in the model
+     * @param samples the range of samples to compute statistics for
+     * @param chunkSize the maximum number of samples to compute without splitting further, greater than 0
+     */
+    public ExpectationTask(List<Component> components, SampleStore samples, int chunkSize) {
+        this.components = components;
+        this.samples = samples;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Run the expectation step on the calling thread, splitting and reducing the samples the same way as
+     * the fork/join task so that the result is identical.
+     *
+     * @param components the components in the model
+     * @param samples the samples to compute statistics for
+     * @param chunkSize the maximum number of samples to compute without splitting further, greater than 0
+     * @return the sufficient statistics of the samples
+     */
+    public static SufficientStatistics computeSequentially(List<Component> components, SampleStore samples,
+                                                           int chunkSize) {
+
+        if (samples.size() <= chunkSize) {
+            return computeChunk(components, samples);
+        }
+
+        int middle = samples.size() / 2;
+        SufficientStatistics left = computeSequentially(components, samples.range(0, middle), chunkSize);
+        SufficientStatistics right = computeSequentially(components, samples.range(middle, samples.size()),
+                chunkSize);
+        left.add(right);
+        return left;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    protected SufficientStatistics compute() {
+
+        if (samples.size() <= chunkSize) {
+            return computeChunk(components, samples);
+        }
+
+        // Fork the right half, compute the left half on this thread, then combine them in a fixed order.
+        int middle = samples.size() / 2;
+        ExpectationTask left = new ExpectationTask(components, samples.range(0, middle), chunkSize);
+        ExpectationTask right = new ExpectationTask(components, samples.range(middle, samples.size()), chunkSize);
+        right.fork();
+
+        SufficientStatistics statistics = left.compute();
+        statistics.add(right.join());
+        return statistics;
+    }
+
+    /**
+     * Get the number of bytes allocated so far by the calling thread, if the JVM can measure it.
+     *
+     * @return the number of bytes, or -1 if the JVM can't measure it
+     */
+    static long getCurrentThreadAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+
+        return ((com.sun.management.ThreadMXBean) bean).getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Compute the statistics of a chunk on the calling thread, recording the bytes allocated while doing so.
+     *
+     * @param components the components in the model
+     * @param samples the chunk of samples
+     * @return the sufficient statistics of the samples
+     */
+    private static SufficientStatistics computeChunk(List<Component> components, SampleStore samples) {
+        long startAllocatedBytes = getCurrentThreadAllocatedBytes();
+        SufficientStatistics statistics = SufficientStatistics.compute(components, samples);
+        if (startAllocatedBytes >= 0) {
+            statistics.addAllocatedBytes(getCurrentThreadAllocatedBytes() - startAllocatedBytes);
+        }
+
+        return statistics;
+    }
+}
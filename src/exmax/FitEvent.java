@@ -0,0 +1,58 @@
+package exmax;
+
+import jdk.jfr.*;
+
+/**
+ * exmax.FitEvent is the flight recorder event for a maximization that has converged or was stopped, with the
+ * same fields as {@link FitSummary}. Its duration covers the whole maximization, including any mini batch stages.
+ */
+@Name("exmax.Fit")
+@Label("EM Fit")
+@Category("ExMax")
+@Description("A maximization that has converged or was stopped")
+public class FitEvent extends Event {
+
+    /**
+     * The number of components in the model.
+     */
+    @Label("Components")
+    int componentSize;
+
+    /**
+     * The number of samples in the model.
+     */
+    @Label("Samples")
+    long sampleSize;
+
+    /**
+     * The number of iterations that improved the model.
+     */
+    @Label("Iterations")
+    int iterations;
+
+    /**
+     * The wall time spent in expectation steps.
+     */
+    @Label("Expectation Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long expectationNanos;
+
+    /**
+     * The wall time spent in maximization steps.
+     */
+    @Label("Maximization Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long maximizationNanos;
+
+    /**
+     * The log likelihood of the maximized model.
+     */
+    @Label("Log Likelihood")
+    double logLikelihood;
+
+    /**
+     * Why the maximization stopped.
+     */
+    @Label("Convergence Reason")
+    String convergenceReason;
+}
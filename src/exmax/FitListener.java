@@ -0,0 +1,25 @@
+package exmax;
+
+/**
+ * exmax.FitListener is notified as {@link Maximization} runs, see {@link ModelFactory#addFitListener(FitListener)}.
+ * Listeners are called on the thread running the maximization, which may be one of several running at the same
+ * time, so they should be quick and thread safe.
+ */
+public interface FitListener {
+
+    /**
+     * Called after each iteration of expectation maximization, including the last one that didn't improve the
+     * model enough to be kept.
+     *
+     * @param metrics the measurements of the iteration
+     */
+    void iterationCompleted(IterationMetrics metrics);
+
+    /**
+     * Called once a maximization has converged, or was stopped before converging as given by
+     * {@link FitSummary#getConvergenceReason()}.
+     *
+     * @param summary the summary of the fit
+     */
+    void fitCompleted(FitSummary summary);
+}
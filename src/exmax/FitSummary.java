@@ -0,0 +1,124 @@
+package exmax;
+
+/**
+ * exmax.FitSummary summarizes a maximization once it has converged or was stopped, and is attached to the
+ * maximized model.
+ */
+public class FitSummary {
+
+    /**
+     * The number of iterations that improved the model.
+     */
+    private final int iterations;
+
+    /**
+     * The wall time from the start of the maximization until it stopped, in nanoseconds.
+     */
+    private final long totalNanos;
+
+    /**
+     * The wall time spent in expectation steps, in nanoseconds.
+     */
+    private final long expectationNanos;
+
+    /**
+     * The wall time spent in maximization steps, in nanoseconds.
+     */
+    private final long maximizationNanos;
+
+    /**
+     * The log likelihood of the maximized model.
+     */
+    private final double logLikelihood;
+
+    /**
+     * Why the maximization stopped.
+     */
+    private final ConvergenceReason convergenceReason;
+
+    /**
+     * Construct a exmax.FitSummary by passing in the measurements of a maximization.
+     *
+     * @param iterations the number of iterations that improved the model
+     * @param totalNanos the wall time from the start of the maximization until it stopped, in nanoseconds
+     * @param expectationNanos the wall time spent in expectation steps, in nanoseconds
+     * @param maximizationNanos the wall time spent in maximization steps, in nanoseconds
+     * @param logLikelihood the log likelihood of the maximized model
+     * @param convergenceReason why the maximization stopped
+     */
+    public FitSummary(int iterations, long totalNanos, long expectationNanos, long maximizationNanos,
+                      double logLikelihood, ConvergenceReason convergenceReason) {
+        this.iterations = iterations;
+        this.totalNanos = totalNanos;
+        this.expectationNanos = expectationNanos;
+        this.maximizationNanos = maximizationNanos;
+        this.logLikelihood = logLikelihood;
+        this.convergenceReason = convergenceReason;
+    }
+
+    /**
+     * Gets the number of iterations that improved the model.
+     *
+     * @return the number of iterations
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Gets the wall time from the start of the maximization until it stopped, in nanoseconds.
+     *
+     * @return the total time
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Gets the wall time spent in expectation steps, in nanoseconds.
+     *
+     * @return the expectation time
+     */
+    public long getExpectationNanos() {
+        return expectationNanos;
+    }
+
+    /**
+     * Gets the wall time spent in maximization steps, in nanoseconds.
+     *
+     * @return the maximization time
+     */
+    public long getMaximizationNanos() {
+        return maximizationNanos;
+    }
+
+    /**
+     * Gets the log likelihood of the maximized model.
+     *
+     * @return the log likelihood
+     */
+    public double getLogLikelihood() {
+        return logLikelihood;
+    }
+
+    /**
+     * Gets why the maximization stopped.
+     *
+     * @return the convergence reason
+     */
+    public ConvergenceReason getConvergenceReason() {
+        return convergenceReason;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public String toString() {
+        return (convergenceReason == ConvergenceReason.PRUNED ? "Stopped (" : "Converged (") + convergenceReason +
+                ") after " + iterations + " iterations in " +
+                String.format("%.3f", totalNanos / 1e6) + " ms, expectation " +
+                String.format("%.3f", expectationNanos / 1e6) + " ms, maximization " +
+                String.format("%.3f", maximizationNanos / 1e6) + " ms";
+    }
+}
@@ -0,0 +1,92 @@
+package exmax;
+
+import java.util.List;
+
+/**
+ * exmax.Initialization holds the initial components chosen by an exmax.Initializer, along with what it cost to
+ * choose them.
+ */
+public class Initialization {
+
+    /**
+     * The name of the initializer that chose the components.
+     */
+    private final String initializerName;
+
+    /**
+     * The initial components.
+     */
+    private final List<Component> components;
+
+    /**
+     * The number of times a sample was read or compared against a candidate component.
+     */
+    private final long sampleEvaluations;
+
+    /**
+     * The wall time in nanoseconds it took to choose the components.
+     */
+    private final long duration;
+
+    /**
+     * Construct a exmax.Initialization.
+     *
+     * @param initializerName the name of the initializer that chose the components
+     * @param components the initial components
+     * @param sampleEvaluations the number of times a sample was read or compared against a candidate component
+     * @param duration the wall time in nanoseconds it took to choose the components
+     */
+    public Initialization(String initializerName, List<Component> components, long sampleEvaluations,
+                          long duration) {
+        this.initializerName = initializerName;
+        this.components = components;
+        this.sampleEvaluations = sampleEvaluations;
+        this.duration = duration;
+    }
+
+    /**
+     * Gets the name of the initializer that chose the components.
+     *
+     * @return the name of the initializer
+     */
+    public String getInitializerName() {
+        return initializerName;
+    }
+
+    /**
+     * Gets the initial components.
+     *
+     * @return the list of initial components
+     */
+    public List<Component> getComponents() {
+        return components;
+    }
+
+    /**
+     * Gets the number of times a sample was read or compared against a candidate component, which measures the
+     * cost of the initializer independently of the machine.
+     *
+     * @return the number of sample evaluations
+     */
+    public long getSampleEvaluations() {
+        return sampleEvaluations;
+    }
+
+    /**
+     * Gets the wall time in nanoseconds it took to choose the components.
+     *
+     * @return the duration in nanoseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public String toString() {
+        return initializerName + ": " + sampleEvaluations + " sample evaluations in " +
+                String.format("%.3f", duration / 1e6) + " ms";
+    }
+}
@@ -0,0 +1,29 @@
+package exmax;
+
+import java.util.Random;
+
+/**
+ * exmax.Initializer chooses the initial components of a model before maximization. Initializers that start
+ * closer to the maximized model need fewer iterations, at the cost of more work up front, which each
+ * initializer reports in the exmax.Initialization it returns.
+ */
+public interface Initializer {
+
+    /**
+     * Choose the initial components for a store of samples.
+     *
+     * @param samples the store of samples
+     * @param componentSize the number of components, greater than or equal to 2
+     * @param rand the source of random for initializers that sample or jitter
+     * @return the initial components and the cost of choosing them
+     * @throws IllegalArgumentException if the store has no samples
+     */
+    Initialization initialize(SampleStore samples, int componentSize, Random rand);
+
+    /**
+     * Gets the name of the initializer, for reporting.
+     *
+     * @return the name of the initializer
+     */
+    String getName();
+}
@@ -0,0 +1,71 @@
+package exmax;
+
+import jdk.jfr.*;
+
+/**
+ * exmax.IterationEvent is the flight recorder event for a single iteration of expectation maximization, with
+ * the same fields as {@link IterationMetrics}. Its duration covers the whole iteration.
+ */
+@Name("exmax.Iteration")
+@Label("EM Iteration")
+@Category("ExMax")
+@Description("A single iteration of expectation maximization")
+public class IterationEvent extends Event {
+
+    /**
+     * The number of the iteration within its maximization, starting from 1.
+     */
+    @Label("Iteration")
+    int iteration;
+
+    /**
+     * The number of components in the model.
+     */
+    @Label("Components")
+    int componentSize;
+
+    /**
+     * The number of samples in the model.
+     */
+    @Label("Samples")
+    long sampleSize;
+
+    /**
+     * The wall time spent in the expectation step.
+     */
+    @Label("Expectation Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long expectationNanos;
+
+    /**
+     * The wall time spent in the maximization step.
+     */
+    @Label("Maximization Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long maximizationNanos;
+
+    /**
+     * The log likelihood of the model after the iteration.
+     */
+    @Label("Log Likelihood")
+    double logLikelihood;
+
+    /**
+     * The change in log likelihood from the model before the iteration.
+     */
+    @Label("Log Likelihood Delta")
+    double logLikelihoodDelta;
+
+    /**
+     * The number of bytes allocated by the expectation and maximization steps of the iteration, or -1.
+     */
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+
+    /**
+     * Whether the iteration improved the model enough to be kept.
+     */
+    @Label("Improved")
+    boolean improved;
+}
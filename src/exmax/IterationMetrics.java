@@ -0,0 +1,175 @@
+package exmax;
+
+/**
+ * exmax.IterationMetrics holds the measurements of a single iteration of expectation maximization.
+ */
+public class IterationMetrics {
+
+    /**
+     * The number of the iteration within its maximization, starting from 1.
+     */
+    private final int iteration;
+
+    /**
+     * The number of components in the model.
+     */
+    private final int componentSize;
+
+    /**
+     * The number of samples in the model.
+     */
+    private final long sampleSize;
+
+    /**
+     * The wall time spent in the expectation step, in nanoseconds.
+     */
+    private final long expectationNanos;
+
+    /**
+     * The wall time spent in the maximization step, in nanoseconds.
+     */
+    private final long maximizationNanos;
+
+    /**
+     * The log likelihood of the model after the iteration.
+     */
+    private final double logLikelihood;
+
+    /**
+     * The change in log likelihood from the model before the iteration.
+     */
+    private final double logLikelihoodDelta;
+
+    /**
+     * The number of bytes allocated by the expectation and maximization steps of the iteration, or -1 if the JVM
+     * can't measure it.
+     */
+    private final long allocatedBytes;
+
+    /**
+     * Whether the iteration improved the model enough to be kept.
+     */
+    private final boolean improved;
+
+    /**
+     * Construct a exmax.IterationMetrics by passing in the measurements of an iteration.
+     *
+     * @param iteration the number of the iteration within its maximization, starting from 1
+     * @param componentSize the number of components in the model
+     * @param sampleSize the number of samples in the model
+     * @param expectationNanos the wall time spent in the expectation step, in nanoseconds
+     * @param maximizationNanos the wall time spent in the maximization step, in nanoseconds
+     * @param logLikelihood the log likelihood of the model after the iteration
+     * @param logLikelihoodDelta the change in log likelihood from the model before the iteration
+     * @param allocatedBytes the number of bytes allocated by the steps of the iteration, or -1
+     * @param improved whether the iteration improved the model enough to be kept
+     */
+    public IterationMetrics(int iteration, int componentSize, long sampleSize, long expectationNanos,
+                            long maximizationNanos, double logLikelihood, double logLikelihoodDelta,
+                            long allocatedBytes, boolean improved) {
+        this.iteration = iteration;
+        this.componentSize = componentSize;
+        this.sampleSize = sampleSize;
+        this.expectationNanos = expectationNanos;
+        this.maximizationNanos = maximizationNanos;
+        this.logLikelihood = logLikelihood;
+        this.logLikelihoodDelta = logLikelihoodDelta;
+        this.allocatedBytes = allocatedBytes;
+        this.improved = improved;
+    }
+
+    /**
+     * Gets the number of the iteration within its maximization, starting from 1.
+     *
+     * @return the iteration number
+     */
+    public int getIteration() {
+        return iteration;
+    }
+
+    /**
+     * Gets the number of components in the model.
+     *
+     * @return the number of components
+     */
+    public int getComponentSize() {
+        return componentSize;
+    }
+
+    /**
+     * Gets the number of samples in the model.
+     *
+     * @return the number of samples
+     */
+    public long getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * Gets the wall time spent in the expectation step, in nanoseconds.
+     *
+     * @return the expectation time
+     */
+    public long getExpectationNanos() {
+        return expectationNanos;
+    }
+
+    /**
+     * Gets the wall time spent in the maximization step, in nanoseconds.
+     *
+     * @return the maximization time
+     */
+    public long getMaximizationNanos() {
+        return maximizationNanos;
+    }
+
+    /**
+     * Gets the log likelihood of the model after the iteration.
+     *
+     * @return the log likelihood
+     */
+    public double getLogLikelihood() {
+        return logLikelihood;
+    }
+
+    /**
+     * Gets the change in log likelihood from the model before the iteration.
+     *
+     * @return the change in log likelihood
+     */
+    public double getLogLikelihoodDelta() {
+        return logLikelihoodDelta;
+    }
+
+    /**
+     * Gets the number of bytes allocated by the expectation and maximization steps of the iteration, on whichever
+     * threads of the pool they ran. Each chunk of the expectation step is measured on its own, so fits running at
+     * the same time aren't counted in each other's iterations.
+     *
+     * @return the number of bytes, or -1 if the JVM can't measure it
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Gets whether the iteration improved the model enough to be kept.
+     *
+     * @return true if the model after the iteration was kept
+     */
+    public boolean isImproved() {
+        return improved;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public String toString() {
+        return "Iteration " + iteration + ": " + String.format("%.3f", logLikelihood) + " (" +
+                String.format("%+.3f", logLikelihoodDelta) + "), expectation " +
+                String.format("%.3f", expectationNanos / 1e6) + " ms, maximization " +
+                String.format("%.3f", maximizationNanos / 1e6) + " ms, " + sampleSize + " samples, " +
+                allocatedBytes + " bytes allocated" + (improved ? "" : ", not kept");
+    }
+}
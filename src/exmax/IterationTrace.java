@@ -0,0 +1,217 @@
+package exmax;
+
+import java.util.List;
+
+/**
+ * exmax.IterationTrace records the components and log likelihood of each iteration of expectation maximization
+ * as primitive values in a ring buffer, so that tracing a long maximization uses a bounded amount of memory.
+ * Once the capacity is reached the oldest iterations are overwritten.
+ */
+public class IterationTrace {
+
+    /**
+     * The number of components in each iteration.
+     */
+    private final int componentSize;
+
+    /**
+     * The maximum number of iterations that are retained.
+     */
+    private final int capacity;
+
+    /**
+     * The mu value of each component for each retained iteration, indexed by slot * componentSize + component.
+     */
+    private final double[] mus;
+
+    /**
+     * The sigma value of each component for each retained iteration, indexed like {@link #mus}.
+     */
+    private final double[] sigmas;
+
+    /**
+     * The tau value of each component for each retained iteration, indexed like {@link #mus}.
+     */
+    private final double[] taus;
+
+    /**
+     * The log likelihood of each retained iteration.
+     */
+    private final double[] logLikelihoods;
+
+    /**
+     * The wall time in nanoseconds it took to compute each retained iteration.
+     */
+    private final long[] durations;
+
+    /**
+     * The total number of iterations recorded, including those that have been overwritten.
+     */
+    private long iterationCount;
+
+    /**
+     * Construct an empty exmax.IterationTrace.
+     *
+     * @param componentSize the number of components in each iteration
+     * @param capacity the maximum number of iterations that are retained, greater than or equal to 1
+     */
+    public IterationTrace(int componentSize, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1, but was " + capacity);
+        }
+
+        this.componentSize = componentSize;
+        this.capacity = capacity;
+        this.mus = new double[capacity * componentSize];
+        this.sigmas = new double[capacity * componentSize];
+        this.taus = new double[capacity * componentSize];
+        this.logLikelihoods = new double[capacity];
+        this.durations = new long[capacity];
+        this.iterationCount = 0;
+    }
+
+    /**
+     * Record an iteration, overwriting the oldest retained iteration if the trace is full.
+     *
+     * @param components the components after the iteration
+     * @param logLikelihood the log likelihood after the iteration
+     * @param duration the wall time in nanoseconds it took to compute the iteration
+     */
+    public synchronized void record(List<Component> components, double logLikelihood, long duration) {
+
+        int slot = (int) (iterationCount % capacity);
+        for (int k = 0; k < componentSize; k++) {
+            Component component = components.get(k);
+            mus[slot * componentSize + k] = component.getMu();
+            sigmas[slot * componentSize + k] = component.getSigma();
+            taus[slot * componentSize + k] = component.getTau();
+        }
+
+        logLikelihoods[slot] = logLikelihood;
+        durations[slot] = duration;
+        iterationCount++;
+    }
+
+    /**
+     * Gets the number of components in each iteration.
+     *
+     * @return the number of components
+     */
+    public int getComponentSize() {
+        return componentSize;
+    }
+
+    /**
+     * Gets the maximum number of iterations that are retained.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the total number of iterations recorded, including those that have been overwritten.
+     *
+     * @return the number of iterations
+     */
+    public synchronized long getIterationCount() {
+        return iterationCount;
+    }
+
+    /**
+     * Gets the number of iterations that are retained.
+     *
+     * @return the number of retained iterations, at most {@link #getCapacity()}
+     */
+    public synchronized int size() {
+        return (int) Math.min(iterationCount, capacity);
+    }
+
+    /**
+     * Gets the 1 based number of a retained iteration.
+     *
+     * @param i the index of the retained iteration, where 0 is the oldest
+     * @return the iteration number
+     */
+    public synchronized long getIteration(int i) {
+        return iterationCount - size() + checkIndex(i) + 1;
+    }
+
+    /**
+     * Gets the mu value of a component in a retained iteration.
+     *
+     * @param i the index of the retained iteration, where 0 is the oldest
+     * @param k the index of the component
+     * @return the mu value
+     */
+    public synchronized double getMu(int i, int k) {
+        return mus[slot(i) * componentSize + k];
+    }
+
+    /**
+     * Gets the sigma value of a component in a retained iteration.
+     *
+     * @param i the index of the retained iteration, where 0 is the oldest
+     * @param k the index of the component
+     * @return the sigma value
+     */
+    public synchronized double getSigma(int i, int k) {
+        return sigmas[slot(i) * componentSize + k];
+    }
+
+    /**
+     * Gets the tau value of a component in a retained iteration.
+     *
+     * @param i the index of the retained iteration, where 0 is the oldest
+     * @param k the index of the component
+     * @return the tau value
+     */
+    public synchronized double getTau(int i, int k) {
+        return taus[slot(i) * componentSize + k];
+    }
+
+    /**
+     * Gets the log likelihood of a retained iteration.
+     *
+     * @param i the index of the retained iteration, where 0 is the oldest
+     * @return the log likelihood
+     */
+    public synchronized double getLogLikelihood(int i) {
+        return logLikelihoods[slot(i)];
+    }
+
+    /**
+     * Gets the wall time in nanoseconds it took to compute a retained iteration.
+     *
+     * @param i the index of the retained iteration, where 0 is the oldest
+     * @return the duration in nanoseconds
+     */
+    public synchronized long getDuration(int i) {
+        return durations[slot(i)];
+    }
+
+    /**
+     * Gets the ring buffer slot of a retained iteration.
+     *
+     * @param i the index of the retained iteration, where 0 is the oldest
+     * @return the slot
+     */
+    private int slot(int i) {
+        return (int) ((iterationCount - size() + checkIndex(i)) % capacity);
+    }
+
+    /**
+     * Check that an index refers to a retained iteration.
+     *
+     * @param i the index of the retained iteration
+     * @return the index
+     */
+    private int checkIndex(int i) {
+        if (i < 0 || i >= size()) {
+            throw new IndexOutOfBoundsException("Index " + i + " is outside of " + size());
+        }
+
+        return i;
+    }
+}
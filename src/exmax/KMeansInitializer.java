@@ -0,0 +1,214 @@
+package exmax;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * exmax.KMeansInitializer seeds cluster centers on a random subsample with k-means++, which picks each new
+ * center with probability proportional to its squared distance from the closest existing center, and then
+ * refines them with a few Lloyd iterations. Each component starts at its cluster center, with the spread and
+ * share of the samples in its cluster as sigma and tau.
+ */
+public class KMeansInitializer implements Initializer {
+
+    /**
+     * The default maximum number of samples in the subsample.
+     */
+    public static final int DEFAULT_SUBSAMPLE_SIZE = 10000;
+
+    /**
+     * The default number of Lloyd iterations.
+     */
+    public static final int DEFAULT_LLOYD_ITERATIONS = 5;
+
+    /**
+     * The maximum number of samples in the subsample.
+     */
+    private final int subsampleSize;
+
+    /**
+     * The number of Lloyd iterations after seeding, where 0 uses the k-means++ seeds directly.
+     */
+    private final int lloydIterations;
+
+    /**
+     * Construct a exmax.KMeansInitializer with the default subsample size and number of Lloyd iterations.
+     */
+    public KMeansInitializer() {
+        this(DEFAULT_SUBSAMPLE_SIZE, DEFAULT_LLOYD_ITERATIONS);
+    }
+
+    /**
+     * Construct a exmax.KMeansInitializer by passing in the subsample size and number of Lloyd iterations.
+     *
+     * @param subsampleSize the maximum number of samples in the subsample, greater than or equal to 1
+     * @param lloydIterations the number of Lloyd iterations, greater than or equal to 0
+     */
+    public KMeansInitializer(int subsampleSize, int lloydIterations) {
+        if (subsampleSize < 1) {
+            throw new IllegalArgumentException("Subsample size must be at least 1, but was " + subsampleSize);
+        }
+
+        if (lloydIterations < 0) {
+            throw new IllegalArgumentException("Lloyd iterations must be at least 0, but was " + lloydIterations);
+        }
+
+        this.subsampleSize = subsampleSize;
+        this.lloydIterations = lloydIterations;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public Initialization initialize(SampleStore samples, int componentSize, Random rand) {
+
+        long start = System.nanoTime();
+        double[] subsample = Subsamples.draw(samples, subsampleSize, rand);
+        if (subsample.length == 0) {
+            throw new IllegalArgumentException("Can't initialize " + componentSize + " components without samples");
+        }
+
+        int n = subsample.length;
+        long sampleEvaluations = n;
+
+        // Seed the first center uniformly, then each next center proportionally to the squared distance.
+        double[] centers = new double[componentSize];
+        double[] distances = new double[n];
+        centers[0] = subsample[rand.nextInt(n)];
+        for (int i = 0; i < n; i++) {
+            double d = subsample[i] - centers[0];
+            distances[i] = d * d;
+        }
+
+        for (int k = 1; k < componentSize; k++) {
+            double total = 0;
+            for (int i = 0; i < n; i++) {
+                total += distances[i];
+            }
+
+            // Pick by walking the cumulative distances, or uniformly if every sample sits on a center.
+            int chosen = rand.nextInt(n);
+            if (total > 0) {
+                double target = rand.nextDouble() * total;
+                for (int i = 0; i < n; i++) {
+                    target -= distances[i];
+                    if (target <= 0) {
+                        chosen = i;
+                        break;
+                    }
+                }
+            }
+
+            centers[k] = subsample[chosen];
+            for (int i = 0; i < n; i++) {
+                double d = subsample[i] - centers[k];
+                distances[i] = Math.min(distances[i], d * d);
+            }
+
+            sampleEvaluations += 2L * n;
+        }
+
+        // Refine the centers with Lloyd iterations, keeping the last assignment for the cluster statistics.
+        int[] assignments = new int[n];
+        assign(subsample, centers, assignments);
+        sampleEvaluations += (long) n * componentSize;
+        for (int iteration = 0; iteration < lloydIterations; iteration++) {
+            double[] sums = new double[componentSize];
+            int[] counts = new int[componentSize];
+            for (int i = 0; i < n; i++) {
+                sums[assignments[i]] += subsample[i];
+                counts[assignments[i]]++;
+            }
+
+            // Leave the center of an empty cluster where it was.
+            for (int k = 0; k < componentSize; k++) {
+                if (counts[k] > 0) {
+                    centers[k] = sums[k] / counts[k];
+                }
+            }
+
+            assign(subsample, centers, assignments);
+            sampleEvaluations += (long) n * (componentSize + 1);
+        }
+
+        // Turn each cluster into a component.
+        double[] sums = new double[componentSize];
+        double[] squareSums = new double[componentSize];
+        int[] counts = new int[componentSize];
+        for (int i = 0; i < n; i++) {
+            double d = subsample[i] - centers[assignments[i]];
+            sums[assignments[i]] += d;
+            squareSums[assignments[i]] += d * d;
+            counts[assignments[i]]++;
+        }
+
+        List<Component> components = new ArrayList<Component>();
+        for (int k = 0; k < componentSize; k++) {
+            double variance = 0;
+            if (counts[k] > 0) {
+                double m = sums[k] / counts[k];
+                variance = Math.max(squareSums[k] / counts[k] - m * m, 0);
+            }
+
+            // Give empty clusters a share of one sample so that they can still pick samples up.
+            double tau = Math.max(counts[k], 1) / (double) (n + componentSize - 1);
+            components.add(new BasicComponent(centers[k], Math.max(Math.sqrt(variance), 1f), tau));
+        }
+
+        return new Initialization(getName(), normalizeTaus(components), sampleEvaluations,
+                System.nanoTime() - start);
+    }
+
+    /**
+     * Assign each sample to its closest center.
+     *
+     * @param samples the samples
+     * @param centers the cluster centers
+     * @param assignments the array to write the index of the closest center for each sample to
+     */
+    private static void assign(double[] samples, double[] centers, int[] assignments) {
+        for (int i = 0; i < samples.length; i++) {
+            int closest = 0;
+            double closestDistance = Math.abs(samples[i] - centers[0]);
+            for (int k = 1; k < centers.length; k++) {
+                double distance = Math.abs(samples[i] - centers[k]);
+                if (distance < closestDistance) {
+                    closest = k;
+                    closestDistance = distance;
+                }
+            }
+
+            assignments[i] = closest;
+        }
+    }
+
+    /**
+     * Scale the tau values of a list of components so that they sum to 1.
+     *
+     * @param components the components
+     * @return the components with normalized tau values
+     */
+    private static List<Component> normalizeTaus(List<Component> components) {
+        double total = 0;
+        for (Component component : components) {
+            total += component.getTau();
+        }
+
+        List<Component> normalized = new ArrayList<Component>();
+        for (Component component : components) {
+            normalized.add(new BasicComponent(component.getMu(), component.getSigma(), component.getTau() / total));
+        }
+
+        return normalized;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public String getName() {
+        return "kmeans++";
+    }
+}
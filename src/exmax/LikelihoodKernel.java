@@ -0,0 +1,31 @@
+package exmax;
+
+/**
+ * exmax.LikelihoodKernel evaluates the Gaussian log likelihood of a single component over an array of samples
+ * at once. Implementations are selected once at startup by {@link LikelihoodKernels#getKernel()}.
+ */
+public interface LikelihoodKernel {
+
+    /**
+     * Evaluates the logarithm of the likelihood of each sample in a range of an array occurring in a component,
+     * which is logNormalizer - (sample - mu)^2 * exponentScale. No exponential is needed, and the result doesn't
+     * underflow for samples far from mu.
+     *
+     * @param samples the array of samples
+     * @param offset the index of the first sample to evaluate
+     * @param length the number of samples to evaluate
+     * @param mu the mu value of the component
+     * @param exponentScale the constant that scales the square distance from mu, 1 / (2 * sigma)
+     * @param logNormalizer the logarithm of the normalizer, -log(2 * pi * sigma) / 2
+     * @param logLikelihoods the array to write the log likelihoods to, starting at index 0
+     */
+    void evaluateLog(double[] samples, int offset, int length, double mu, double exponentScale,
+                     double logNormalizer, double[] logLikelihoods);
+
+    /**
+     * Gets the name of the kernel, for reporting which kernel was selected.
+     *
+     * @return the name of the kernel
+     */
+    String getName();
+}
@@ -0,0 +1,65 @@
+package exmax;
+
+/**
+ * exmax.LikelihoodKernels selects the exmax.LikelihoodKernel for the platform once at startup. The vector kernel
+ * is used when the jdk.incubator.vector module is available, unless the exmax.kernel system property is set to
+ * "scalar".
+ */
+public abstract class LikelihoodKernels {
+
+    /**
+     * The kernel selected at startup.
+     */
+    private static final LikelihoodKernel KERNEL = selectKernel();
+
+    /**
+     * Gets the kernel selected at startup.
+     *
+     * @return the likelihood kernel
+     */
+    public static LikelihoodKernel getKernel() {
+        return KERNEL;
+    }
+
+    /**
+     * Select the vector kernel if it can be loaded and agrees with the scalar kernel, otherwise the scalar kernel.
+     *
+     * @return the selected kernel
+     */
+    private static LikelihoodKernel selectKernel() {
+
+        LikelihoodKernel scalar = new ScalarLikelihoodKernel();
+        if ("scalar".equals(System.getProperty("exmax.kernel"))) {
+            return scalar;
+        }
+
+        try {
+            LikelihoodKernel vector = (LikelihoodKernel) Class.forName("exmax.VectorLikelihoodKernel")
+                    .getDeclaredConstructor().newInstance();
+
+            // Check the vector kernel on a few samples, including the tail that isn't a full vector.
+            double[] samples = new double[37];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = i - 18.5;
+            }
+
+            double[] expected = new double[samples.length];
+            double[] actual = new double[samples.length];
+            scalar.evaluateLog(samples, 0, samples.length, 1.5, 1 / 8.0, -Math.log(8 * Math.PI) / 2, expected);
+            vector.evaluateLog(samples, 0, samples.length, 1.5, 1 / 8.0, -Math.log(8 * Math.PI) / 2, actual);
+            for (int i = 0; i < samples.length; i++) {
+                if (Math.abs(expected[i] - actual[i]) > 1e-12 * Math.abs(expected[i])) {
+                    return scalar;
+                }
+            }
+
+            return vector;
+
+        } catch (Exception ex) {
+            return scalar;
+
+        } catch (LinkageError ex) {
+            return scalar;
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package exmax;
 
 import java.io.*;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Main {
@@ -19,6 +19,49 @@ public class Main {
             System.out.println("================================================");
             System.out.println("ExMax: A tool for expectation maximization.");
 
+            // Convert a text file to a binary sample file if requested.
+            if (args.length == 3 && args[0].equals("--convert")) {
+                SampleFile.Conversion conversion = SampleFile.convert(args[1], args[2]);
+                if (conversion.getMalformedCount() > 0) {
+                    System.err.println("Skipped " + conversion.getMalformedCount() + " malformed tokens in " +
+                            args[1] + ", at byte offsets " + Arrays.toString(conversion.getMalformedOffsets()) +
+                            (conversion.getMalformedCount() > conversion.getMalformedOffsets().length ? "..." : ""));
+                }
+
+                System.out.println("Converted " + conversion.getSampleSize() + " samples to " + args[2]);
+                System.exit(0);
+            }
+
+            // Serve a shard of samples to a coordinator if requested.
+            if (args.length == 3 && args[0].equals("--worker")) {
+                new ShardWorker(loadSampleStore(args[2])).serve(Integer.parseInt(args[1]));
+                System.exit(0);
+            }
+
+            // Fit samples sharded across workers if requested.
+            if (args.length >= 3 && args[0].equals("--coordinate")) {
+                coordinate(args[1], Arrays.copyOfRange(args, 2, args.length));
+                System.exit(0);
+            }
+
+            // Fit every file in a directory or manifest if requested.
+            if (args.length == 3 && args[0].equals("--batch")) {
+                System.exit(runBatch(args[1], args[2]) ? 0 : -1);
+            }
+
+            // Score samples with a saved model if requested.
+            if (args.length == 4 && args[0].equals("--score")) {
+                scoreSamples(args[1], args[2], args[3]);
+                System.exit(0);
+            }
+
+            // Save the fitted models as well as writing them if requested.
+            String modelPath = null;
+            if (args.length == 4 && args[0].equals("--save")) {
+                modelPath = args[3];
+                args = new String[] { args[1], args[2] };
+            }
+
             // If args weren't specified, print usage and exit.
             if (args.length != 2) {
                 printUsage();
@@ -30,9 +73,10 @@ public class Main {
             String outputPath = args[1];
 
             // Load samples.
-            List<Double> samples = loadSamples(inputPath);
+            SampleStore samples = loadSampleStore(inputPath);
 
-            // Create models with 2-5 components.
+            // Create models with 2-5 components, fitting them at the same time when there are spare processors.
+            ModelFactory.setSearchParallelism(Math.min(4, Runtime.getRuntime().availableProcessors()));
             List<Model> models = ModelFactory.createMaximizedModels(samples, 5);
 
             // Create the best model for the samples.
@@ -42,6 +86,9 @@ public class Main {
 
             // Write the models to file.
             writeModels(outputPath, models);
+            if (modelPath != null) {
+                saveModels(modelPath, models);
+            }
 
         } catch (Exception ex) {
 
@@ -60,7 +107,15 @@ public class Main {
 
         System.out.println("================================================");
         System.out.println("Usage: <exmax> [inputfile] [outputfile]");
+        System.out.println("       <exmax> --convert [textfile] [samplefile]");
+        System.out.println("       <exmax> --save [inputfile] [outputfile] [modelfile]");
+        System.out.println("       <exmax> --score [modelfile] [inputfile] [outputfile]");
+        System.out.println("       <exmax> --batch [inputdirectory|manifest] [outputdirectory]");
+        System.out.println("       <exmax> --worker [port] [inputfile]");
+        System.out.println("       <exmax> --coordinate [outputfile] [port]...");
         System.out.println("Example: exmax data/sample1.txt data/output.txt");
+        System.out.println("Input files may be text, or binary sample files created with --convert.");
+        System.out.println("Model files are binary, or JSON when the name ends in .json, which can't be scored.");
     }
 
     /**
@@ -71,24 +126,46 @@ public class Main {
      * @throws IOException
      */
     public static List<Double> loadSamples(String filePath) throws IOException {
+        return loadSampleStore(filePath).asList();
+    }
+
+    /**
+     * Load samples into a store of unboxed samples. Binary sample files are memory mapped and used directly,
+     * otherwise the file is read as text where the samples are space delimited, and any tokens that aren't
+     * numbers are reported on standard error.
+     *
+     * @param filePath the path of the input file
+     * @return a store of samples
+     * @throws IOException
+     */
+    public static SampleStore loadSampleStore(String filePath) throws IOException {
+        return loadSampleStore(filePath, Runtime.getRuntime().availableProcessors());
+    }
 
-        List<Double> samples = new ArrayList<Double>();
-        FileReader fr = new FileReader(filePath);
-        BufferedReader br = new BufferedReader(fr);
-        String line;
+    /**
+     * Load samples into a store of unboxed samples, parsing text files on a given number of threads.
+     *
+     * @param filePath the path of the input file
+     * @param parallelism the number of threads used to parse text, greater than or equal to 1
+     * @return a store of samples
+     * @throws IOException
+     */
+    public static SampleStore loadSampleStore(String filePath, int parallelism) throws IOException {
 
-        while ((line = br.readLine()) != null) {
-            for (String s : line.split("\\s")) {
-                try {
-                    double d = Double.valueOf(s);
-                    samples.add(d);
-                }
+        if (SampleFile.isSampleFile(filePath)) {
+            return SampleFile.map(filePath);
+        }
 
-                catch (Exception ex) { }
-            }
+        // Parse the text in parallel chunks, and report tokens that aren't samples rather than dropping them.
+        TextSampleLoader loader = new TextSampleLoader(parallelism);
+        TextSampleLoader.Result result = loader.load(filePath);
+        if (result.getMalformedCount() > 0) {
+            System.err.println("Skipped " + result.getMalformedCount() + " malformed tokens in " + filePath +
+                    ", at byte offsets " + Arrays.toString(result.getMalformedOffsets()) +
+                    (result.getMalformedCount() > result.getMalformedOffsets().length ? "..." : ""));
         }
 
-        return samples;
+        return result.getSamples();
     }
 
     /**
@@ -110,4 +187,129 @@ public class Main {
 
         bw.close();
     }
+
+    /**
+     * Fit models to samples sharded across workers started with --worker on the same machine, running the
+     * maximization step here, and write the models to a text file.
+     *
+     * @param outputPath the path of the output file
+     * @param ports the port of each worker, in shard order
+     * @throws IOException
+     */
+    public static void coordinate(String outputPath, String[] ports) throws IOException {
+
+        int[] workerPorts = new int[ports.length];
+        for (int i = 0; i < ports.length; i++) {
+            workerPorts[i] = Integer.parseInt(ports[i]);
+        }
+
+        // The workers answer one request at a time, so fit the model sizes one after another.
+        ShardedSampleStore samples = new ShardedSampleStore(workerPorts);
+        try {
+            ModelFactory.setSearchParallelism(1);
+            writeModels(outputPath, ModelFactory.createMaximizedModels(samples, 5));
+
+        } finally {
+            samples.close();
+        }
+    }
+
+    /**
+     * Fit models to every input file in a directory or manifest, fitting as many files at the same time as there
+     * are processors, and print a summary with any failures.
+     *
+     * @param inputPath the path of the input directory or manifest
+     * @param outputDirectory the path of the directory for output files
+     * @return true if every file succeeded
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static boolean runBatch(String inputPath, String outputDirectory)
+            throws IOException, InterruptedException {
+
+        // Fit files in parallel rather than the model sizes of each file.
+        ModelFactory.setSearchParallelism(1);
+        BatchRunner runner = new BatchRunner(5, Runtime.getRuntime().availableProcessors());
+        BatchRunner.Summary summary = runner.run(BatchRunner.listInputs(inputPath), outputDirectory);
+
+        for (BatchRunner.Result result : summary.getResults()) {
+            if (!result.isSucceeded()) {
+                System.err.println("Failed " + result.getInputPath() + ": " + result.getFailure());
+            }
+        }
+
+        System.out.println(summary);
+        return summary.getFailedSize() == 0;
+    }
+
+    /**
+     * Save a list of models to a model file, as JSON if the name of the file ends in .json and otherwise in
+     * the binary format that can be loaded for scoring.
+     *
+     * @param filePath the path of the model file
+     * @param models the list of models to save
+     * @throws IOException
+     */
+    public static void saveModels(String filePath, List<Model> models) throws IOException {
+
+        if (filePath.endsWith(".json")) {
+            ModelFile.writeJson(filePath, models);
+        } else {
+            ModelFile.write(filePath, models);
+        }
+
+        System.out.println("Saved " + models.size() + " models to " + filePath);
+    }
+
+    /**
+     * Score samples with the model in a binary model file that has the highest bayesian information criterion,
+     * writing each sample, the index of the component it most likely belongs to and the log density of the
+     * model at the sample to a text file, one sample per line.
+     *
+     * @param modelPath the path of the binary model file
+     * @param inputPath the path of the input file
+     * @param outputPath the path of the output file
+     * @throws IOException
+     */
+    public static void scoreSamples(String modelPath, String inputPath, String outputPath) throws IOException {
+
+        // Load the saved models and pick the best one.
+        ModelFile.Record best = null;
+        for (ModelFile.Record record : ModelFile.read(modelPath)) {
+            if (best == null ||
+                    record.getBayesianInformationCriterion() > best.getBayesianInformationCriterion()) {
+                best = record;
+            }
+        }
+
+        if (best == null) {
+            throw new IOException(modelPath + " has no models");
+        }
+
+        // Score the samples in bulk.
+        SampleStore samples = loadSampleStore(inputPath);
+        ModelScorer scorer = new ModelScorer(best.getModel(), Runtime.getRuntime().availableProcessors());
+        int[] assignments;
+        double[] logDensities;
+        try {
+            assignments = scorer.classify(samples);
+            logDensities = scorer.getLogDensities(samples);
+
+        } finally {
+            scorer.close();
+        }
+
+        BufferedWriter bw = new BufferedWriter(new FileWriter(outputPath));
+        try {
+            for (int i = 0; i < samples.size(); i++) {
+                bw.write(samples.get(i) + "\t" + assignments[i] + "\t" + logDensities[i] + System.lineSeparator());
+            }
+
+        } finally {
+            bw.close();
+        }
+
+        System.out.println("Scored " + samples.size() + " samples with the " + best.getModel().getComponentSize() +
+                " component model in " + modelPath);
+    }
 }
@@ -0,0 +1,124 @@
+package exmax;
+
+import java.nio.DoubleBuffer;
+import java.util.List;
+
+/**
+ * exmax.MappedSampleStore provides a exmax.SampleStore that reads samples directly out of memory mapped
+ * segments of a binary sample file, without copying them onto the heap. See {@link SampleFile}.
+ */
+public class MappedSampleStore implements SampleStore {
+
+    /**
+     * The number of bits of a sample index that address a sample within a segment.
+     */
+    public static final int SEGMENT_SHIFT = 27;
+
+    /**
+     * The maximum number of samples in a segment, which keeps each mapping at 1 GB.
+     */
+    public static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+
+    /**
+     * The mapped segments of the file, each holding {@link #SEGMENT_SIZE} samples except for the last.
+     */
+    private final DoubleBuffer[] segments;
+
+    /**
+     * The index of the first sample in the store, across all segments.
+     */
+    private final int offset;
+
+    /**
+     * The number of samples in the store.
+     */
+    private final int length;
+
+    /**
+     * Construct a exmax.MappedSampleStore by passing in the mapped segments of a file.
+     *
+     * @param segments the mapped segments, each holding {@link #SEGMENT_SIZE} samples except for the last
+     * @param offset the index of the first sample in the store, across all segments
+     * @param length the number of samples in the store
+     */
+    public MappedSampleStore(DoubleBuffer[] segments, int offset, int length) {
+        this.segments = segments;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public int size() {
+        return length;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public double get(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " is outside of " + length);
+        }
+
+        int i = offset + index;
+        return segments[i >>> SEGMENT_SHIFT].get(i & (SEGMENT_SIZE - 1));
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public SampleStore range(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > length || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Range " + fromIndex + "-" + toIndex + " is outside of " + length);
+        }
+
+        return new MappedSampleStore(segments, offset + fromIndex, toIndex - fromIndex);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void copyTo(int index, double[] destination, int destinationIndex, int length) {
+        if (index < 0 || length < 0 || index + length > this.length) {
+            throw new IndexOutOfBoundsException("Range " + index + "+" + length + " is outside of " + this.length);
+        }
+
+        // Copy from one segment at a time, duplicating each so that concurrent copies don't share a position.
+        int i = offset + index;
+        while (length > 0) {
+            int position = i & (SEGMENT_SIZE - 1);
+            int count = Math.min(length, SEGMENT_SIZE - position);
+            DoubleBuffer segment = segments[i >>> SEGMENT_SHIFT].duplicate();
+            segment.position(position);
+            segment.get(destination, destinationIndex, count);
+
+            i += count;
+            destinationIndex += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public double[] toArray() {
+        double[] copy = new double[length];
+        copyTo(0, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public List<Double> asList() {
+        return new SampleStoreList(this);
+    }
+}
@@ -0,0 +1,538 @@
+package exmax;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * exmax.Maximization runs expectation maximization on a model one iteration at a time, so that callers can
+ * interleave or compare fits before they converge. {@link ModelFactory#maximize(Model)} runs a single
+ * maximization until it converges. A maximization may first run on a series of mini batches drawn from the
+ * samples, each stage starting from the components of the last, and only the final stage on the samples of the
+ * model completes the fit, so the listeners and the flight recorder see the whole schedule as one fit.
+ */
+public class Maximization {
+
+    /**
+     * The best model found so far.
+     */
+    private Model model;
+
+    /**
+     * The statistics from the expectation step for the current model.
+     */
+    private SufficientStatistics statistics;
+
+    /**
+     * The samples of the initial model, which the final stage runs on.
+     */
+    private final SampleStore samples;
+
+    /**
+     * The mini batches to run on before the samples of the initial model, in order.
+     */
+    private final SampleStore[] miniBatches;
+
+    /**
+     * The index of the mini batch the current stage runs on, or the number of mini batches on the final stage.
+     */
+    private int stage;
+
+    /**
+     * The minimum significant improvement in log likelihood for the current stage, smaller improvements end it.
+     */
+    private double delta;
+
+    /**
+     * The number of iterations that improved the model.
+     */
+    private int iterations;
+
+    /**
+     * The trace that iterations are recorded in, or null if tracing is turned off.
+     */
+    private final IterationTrace trace;
+
+    /**
+     * The acceleration used to move from one model to the next.
+     */
+    private final Acceleration acceleration;
+
+    /**
+     * Whether to stop once the Aitken extrapolation of the log likelihood predicts less than the minimum
+     * significant improvement remaining.
+     */
+    private final boolean aitkenStopping;
+
+    /**
+     * The log likelihood before the current model, for Aitken extrapolation.
+     */
+    private double priorLogLikelihood;
+
+    /**
+     * Whether the last iteration failed to improve the model enough to continue.
+     */
+    private boolean converged;
+
+    /**
+     * The listeners notified of each iteration and of convergence.
+     */
+    private final List<FitListener> listeners;
+
+    /**
+     * The flight recorder event for the whole maximization, committed once it converges.
+     */
+    private final FitEvent fitEvent;
+
+    /**
+     * The time the maximization started, from {@link System#nanoTime()}.
+     */
+    private final long startNanos;
+
+    /**
+     * The wall time spent in expectation steps so far, in nanoseconds.
+     */
+    private long expectationNanos;
+
+    /**
+     * The wall time spent in maximization steps so far, in nanoseconds.
+     */
+    private long maximizationNanos;
+
+    /**
+     * The bytes allocated by the expectation and maximization steps so far, or -1 if the JVM can't measure it.
+     */
+    private long allocatedBytes;
+
+    /**
+     * The statistics last returned by an expectation step, so that statistics cached on a model aren't counted
+     * in {@link #allocatedBytes} twice.
+     */
+    private SufficientStatistics expectedStatistics;
+
+    /**
+     * The summary of the maximization, or null until it converges.
+     */
+    private FitSummary summary;
+
+    /**
+     * Construct a exmax.Maximization by passing in the initial model, using the delta ratio, acceleration and
+     * stopping rule from {@link ModelFactory}.
+     *
+     * @param model the initial model
+     */
+    public Maximization(Model model) {
+        this(model, new SampleStore[0]);
+    }
+
+    /**
+     * Construct a exmax.Maximization that runs on each of a series of mini batches until it converges before
+     * running on the samples of the initial model, using the delta ratio, acceleration and stopping rule from
+     * {@link ModelFactory}.
+     *
+     * @param model the initial model
+     * @param miniBatches the mini batches to run on first, in order, which may be empty
+     */
+    public Maximization(Model model, SampleStore[] miniBatches) {
+
+        // Run the expectation step for the initial model, which is reused for every later comparison.
+        long start = System.nanoTime();
+        this.fitEvent = new FitEvent();
+        fitEvent.begin();
+        this.startNanos = start;
+        this.expectationNanos = 0;
+        this.maximizationNanos = 0;
+        this.allocatedBytes = ExpectationTask.getCurrentThreadAllocatedBytes() < 0 ? -1 : 0;
+        this.expectedStatistics = null;
+        this.listeners = ModelFactory.getFitListeners();
+        this.samples = model.getSampleStore();
+        this.miniBatches = miniBatches.clone();
+        this.stage = 0;
+        this.model = miniBatches.length > 0 ? new BasicModel(model.getComponents(), this.miniBatches[0]) : model;
+        this.statistics = expect(this.model);
+
+        // Record the initial model as the first iteration, unless tracing is turned off.
+        int traceCapacity = ModelFactory.getTraceCapacity();
+        this.trace = traceCapacity > 0 ? new IterationTrace(model.getComponentSize(), traceCapacity) : null;
+        if (trace != null) {
+            trace.record(this.model.getComponents(), statistics.getLogLikelihood(), System.nanoTime() - start);
+            this.model.setIterationTrace(trace);
+        }
+
+        // Calculate the minimum significant delta, stop for improvement smaller than the value.
+        this.delta = -1 * statistics.getLogLikelihood() * ModelFactory.getDeltaRatio();
+        this.acceleration = ModelFactory.getAcceleration();
+        this.aitkenStopping = ModelFactory.isAitkenStopping();
+        this.priorLogLikelihood = Double.NaN;
+        this.iterations = 0;
+        this.converged = false;
+    }
+
+    /**
+     * Run a single iteration of expectation maximization. If the iteration doesn't improve the model by
+     * more than the minimum significant delta the current model is kept and the stage is converged, which
+     * converges the maximization on the final stage and otherwise moves it on to the next stage.
+     *
+     * @return true if the model was improved or moved on to the next stage, false if the maximization is converged
+     */
+    public boolean step() {
+
+        if (converged) {
+            return false;
+        }
+
+        long start = System.nanoTime();
+        long startExpectationNanos = expectationNanos;
+        long startMaximizationNanos = maximizationNanos;
+        long startAllocatedBytes = allocatedBytes;
+        IterationEvent event = new IterationEvent();
+        event.begin();
+        List<Component> nextModelComponents = maximize(model.getComponents(), statistics);
+
+        // Create the new model, keep the current one if there isn't enough improvement.
+        Model nextModel = new BasicModel(nextModelComponents, model.getSampleStore());
+        SufficientStatistics nextStatistics = expect(nextModel);
+        if (nextStatistics.getLogLikelihood() - statistics.getLogLikelihood() <= delta) {
+            report(event, statistics.getLogLikelihood(), nextStatistics.getLogLikelihood(),
+                    expectationNanos - startExpectationNanos, maximizationNanos - startMaximizationNanos,
+                    startAllocatedBytes, false);
+            if (isMiniBatch()) {
+                nextStage();
+                return true;
+            }
+
+            complete(ConvergenceReason.DELTA);
+            return false;
+        }
+
+        if (acceleration == Acceleration.SQUAREM) {
+            nextModel = extrapolate(nextModel);
+            nextModelComponents = nextModel.getComponents();
+            nextStatistics = nextModel.getSufficientStatistics();
+        }
+
+        // Stop after this iteration if Aitken extrapolation predicts that little improvement remains.
+        double logLikelihood = statistics.getLogLikelihood();
+        double nextLogLikelihood = nextStatistics.getLogLikelihood();
+        boolean predictedConverged = false;
+        if (aitkenStopping && !Double.isNaN(priorLogLikelihood)) {
+            double rate = (nextLogLikelihood - logLikelihood) / (logLikelihood - priorLogLikelihood);
+            if (rate > 0 && rate < 1 && (nextLogLikelihood - logLikelihood) * rate / (1 - rate) <= delta) {
+                predictedConverged = true;
+            }
+        }
+
+        priorLogLikelihood = logLikelihood;
+
+        // Record the iteration rather than linking the prior model, so memory doesn't grow with iterations.
+        if (trace != null) {
+            trace.record(nextModelComponents, nextStatistics.getLogLikelihood(), System.nanoTime() - start);
+            nextModel.setIterationTrace(trace);
+        }
+
+        model = nextModel;
+        statistics = nextStatistics;
+        iterations++;
+        report(event, logLikelihood, nextLogLikelihood, expectationNanos - startExpectationNanos,
+                maximizationNanos - startMaximizationNanos, startAllocatedBytes, true);
+        if (predictedConverged) {
+            if (isMiniBatch()) {
+                nextStage();
+            } else {
+                complete(ConvergenceReason.AITKEN);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Stop a maximization that hasn't converged, for example a restart that was pruned, and report it to the
+     * listeners and the flight recorder like one that has. Nothing happens if the maximization is converged.
+     *
+     * @param convergenceReason why the maximization stopped
+     */
+    public void stop(ConvergenceReason convergenceReason) {
+        if (!converged) {
+            complete(convergenceReason);
+        }
+    }
+
+    /**
+     * Gets the best model found so far.
+     *
+     * @return the current model
+     */
+    public Model getModel() {
+        return model;
+    }
+
+    /**
+     * Gets the log likelihood of the current model.
+     *
+     * @return the log likelihood
+     */
+    public double getLogLikelihood() {
+        return statistics.getLogLikelihood();
+    }
+
+    /**
+     * Gets the number of iterations that improved the model.
+     *
+     * @return the number of iterations
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Gets whether the maximization is converged, so further iterations won't change the model.
+     *
+     * @return true if the maximization is converged
+     */
+    public boolean isConverged() {
+        return converged;
+    }
+
+    /**
+     * Gets whether the maximization is still running on a mini batch, rather than on the samples of the model.
+     *
+     * @return true if a mini batch stage remains
+     */
+    public boolean isMiniBatch() {
+        return stage < miniBatches.length;
+    }
+
+    /**
+     * Gets the summary of the maximization, which is also set on the model once it converges.
+     *
+     * @return the fit summary, or null if the maximization hasn't converged
+     */
+    public FitSummary getSummary() {
+        return summary;
+    }
+
+    /**
+     * Move on to the next stage, placing the components of the current model on the next mini batch, or on the
+     * samples of the initial model after the last one. The minimum significant delta is recalculated for the
+     * samples of the stage, and the Aitken extrapolation starts over.
+     */
+    private void nextStage() {
+        long start = System.nanoTime();
+        stage++;
+        model = new BasicModel(model.getComponents(), isMiniBatch() ? miniBatches[stage] : samples);
+        statistics = expect(model);
+        if (trace != null) {
+            trace.record(model.getComponents(), statistics.getLogLikelihood(), System.nanoTime() - start);
+            model.setIterationTrace(trace);
+        }
+
+        delta = -1 * statistics.getLogLikelihood() * ModelFactory.getDeltaRatio();
+        priorLogLikelihood = Double.NaN;
+    }
+
+    /**
+     * Take a SQUAREM step from the current model, given the model after one plain step. A second plain step is
+     * taken, the model is extrapolated along the two steps, and one more plain step stabilizes the result. If
+     * that isn't at least as good as the second plain step, the second plain step is used instead.
+     *
+     * @param firstModel the model after one plain step from the current model
+     * @return the model after the SQUAREM step
+     */
+    private Model extrapolate(Model firstModel) {
+
+        SampleStore samples = model.getSampleStore();
+        List<Component> components = model.getComponents();
+        List<Component> firstComponents = firstModel.getComponents();
+        List<Component> secondComponents = maximize(firstComponents, expect(firstModel));
+        Model secondModel = new BasicModel(secondComponents, samples);
+
+        // Compare the first step with the change between the first and second steps.
+        int componentSize = components.size();
+        double[] r = new double[2 * componentSize];
+        double[] v = new double[2 * componentSize];
+        double rr = 0;
+        double vv = 0;
+        for (int k = 0; k < componentSize; k++) {
+            Component c0 = components.get(k);
+            Component c1 = firstComponents.get(k);
+            Component c2 = secondComponents.get(k);
+            r[2 * k] = c1.getMu() - c0.getMu();
+            r[2 * k + 1] = c1.getSigma() - c0.getSigma();
+            v[2 * k] = c2.getMu() - c1.getMu() - r[2 * k];
+            v[2 * k + 1] = c2.getSigma() - c1.getSigma() - r[2 * k + 1];
+            rr += r[2 * k] * r[2 * k] + r[2 * k + 1] * r[2 * k + 1];
+            vv += v[2 * k] * v[2 * k] + v[2 * k + 1] * v[2 * k + 1];
+        }
+
+        if (!(vv > 0)) {
+            return secondModel;
+        }
+
+        // Step length from the third SQUAREM scheme, at least as long as the two plain steps.
+        double alpha = Math.min(-Math.sqrt(rr / vv), -1);
+
+        List<Component> extrapolatedComponents = new ArrayList<Component>();
+        for (int k = 0; k < componentSize; k++) {
+            Component c0 = components.get(k);
+            double mu = c0.getMu() - 2 * alpha * r[2 * k] + alpha * alpha * v[2 * k];
+            double sigma = c0.getSigma() - 2 * alpha * r[2 * k + 1] + alpha * alpha * v[2 * k + 1];
+
+            // Keep sigma within the same floor as the maximization step.
+            extrapolatedComponents.add(new BasicComponent(mu, Math.max(sigma, 1.0f), c0.getTau()));
+        }
+
+        Model extrapolatedModel = new BasicModel(extrapolatedComponents, samples);
+        Model stabilizedModel = new BasicModel(maximize(extrapolatedComponents, expect(extrapolatedModel)),
+                samples);
+
+        // Only keep the extrapolation if it didn't lose ground to plain expectation maximization.
+        if (expect(stabilizedModel).getLogLikelihood() >= expect(secondModel).getLogLikelihood()) {
+            return stabilizedModel;
+        }
+
+        return secondModel;
+    }
+
+    /**
+     * Run the expectation step for a model, or reuse its statistics if they are cached, adding the time taken
+     * to {@link #expectationNanos} and the bytes allocated to {@link #allocatedBytes}.
+     *
+     * @param model the model
+     * @return the statistics of the model
+     */
+    private SufficientStatistics expect(Model model) {
+        long start = System.nanoTime();
+        SufficientStatistics modelStatistics = model.getSufficientStatistics();
+        expectationNanos += System.nanoTime() - start;
+        if (allocatedBytes >= 0 && modelStatistics != expectedStatistics) {
+            allocatedBytes += modelStatistics.getAllocatedBytes();
+        }
+
+        expectedStatistics = modelStatistics;
+        return modelStatistics;
+    }
+
+    /**
+     * Run the maximization step for components, adding the time taken to {@link #maximizationNanos} and the
+     * bytes allocated to {@link #allocatedBytes}.
+     *
+     * @param components the components that the statistics were computed for
+     * @param statistics the statistics from the expectation step
+     * @return the maximized components
+     */
+    private List<Component> maximize(List<Component> components, SufficientStatistics statistics) {
+        long start = System.nanoTime();
+        long startAllocatedBytes = allocatedBytes >= 0 ? ExpectationTask.getCurrentThreadAllocatedBytes() : -1;
+        List<Component> nextComponents = maximizeComponents(components, statistics);
+        maximizationNanos += System.nanoTime() - start;
+        if (startAllocatedBytes >= 0) {
+            allocatedBytes += ExpectationTask.getCurrentThreadAllocatedBytes() - startAllocatedBytes;
+        }
+
+        return nextComponents;
+    }
+
+    /**
+     * Report an iteration to the listeners and the flight recorder.
+     *
+     * @param event the flight recorder event for the iteration, begun when the iteration started
+     * @param fromLogLikelihood the log likelihood before the iteration
+     * @param toLogLikelihood the log likelihood after the iteration
+     * @param iterationExpectationNanos the wall time spent in the expectation step, in nanoseconds
+     * @param iterationMaximizationNanos the wall time spent in the maximization step, in nanoseconds
+     * @param startAllocatedBytes the bytes allocated by the maximization when the iteration started, or -1
+     * @param improved whether the iteration improved the model enough to be kept
+     */
+    private void report(IterationEvent event, double fromLogLikelihood, double toLogLikelihood,
+                        long iterationExpectationNanos, long iterationMaximizationNanos, long startAllocatedBytes,
+                        boolean improved) {
+
+        // Skip building the measurements when nothing is listening.
+        event.end();
+        if (listeners.isEmpty() && !event.shouldCommit()) {
+            return;
+        }
+
+        long iterationAllocatedBytes = startAllocatedBytes < 0 ? -1 : allocatedBytes - startAllocatedBytes;
+        int iteration = improved ? iterations : iterations + 1;
+        if (event.shouldCommit()) {
+            event.iteration = iteration;
+            event.componentSize = model.getComponentSize();
+            event.sampleSize = model.getSampleSize();
+            event.expectationNanos = iterationExpectationNanos;
+            event.maximizationNanos = iterationMaximizationNanos;
+            event.logLikelihood = toLogLikelihood;
+            event.logLikelihoodDelta = toLogLikelihood - fromLogLikelihood;
+            event.allocatedBytes = iterationAllocatedBytes;
+            event.improved = improved;
+            event.commit();
+        }
+
+        if (!listeners.isEmpty()) {
+            IterationMetrics metrics = new IterationMetrics(iteration, model.getComponentSize(),
+                    model.getSampleSize(), iterationExpectationNanos, iterationMaximizationNanos,
+                    toLogLikelihood, toLogLikelihood - fromLogLikelihood, iterationAllocatedBytes, improved);
+            for (FitListener listener : listeners) {
+                listener.iterationCompleted(metrics);
+            }
+        }
+    }
+
+    /**
+     * Mark the maximization as converged, attach its summary to the model and report it to the listeners and
+     * the flight recorder.
+     *
+     * @param convergenceReason why the maximization stopped
+     */
+    private void complete(ConvergenceReason convergenceReason) {
+
+        converged = true;
+        summary = new FitSummary(iterations, System.nanoTime() - startNanos, expectationNanos, maximizationNanos,
+                statistics.getLogLikelihood(), convergenceReason);
+        model.setFitSummary(summary);
+
+        fitEvent.end();
+        if (fitEvent.shouldCommit()) {
+            fitEvent.componentSize = model.getComponentSize();
+            fitEvent.sampleSize = model.getSampleSize();
+            fitEvent.iterations = iterations;
+            fitEvent.expectationNanos = expectationNanos;
+            fitEvent.maximizationNanos = maximizationNanos;
+            fitEvent.logLikelihood = statistics.getLogLikelihood();
+            fitEvent.convergenceReason = convergenceReason.name();
+            fitEvent.commit();
+        }
+
+        for (FitListener listener : listeners) {
+            listener.fitCompleted(summary);
+        }
+    }
+
+    /**
+     * Runs the maximization step of expectation maximization, adjusting the mu and sigma of each component
+     * based on the statistics from the expectation step.
+     *
+     * @param components the components that the statistics were computed for
+     * @param statistics the statistics from the expectation step
+     * @return the maximized components
+     */
+    private static List<Component> maximizeComponents(List<Component> components, SufficientStatistics statistics) {
+
+        List<Component> nextComponents = new ArrayList<Component>();
+        for (int k = 0; k < components.size(); k++) {
+
+            // Calculate the given component mu by taking the average of the samples, weighted on correlation
+            // to the component.
+            double mu = statistics.getMean(k);
+
+            // Calculate the given component sigma by taking the square root of the square of the distance
+            // between each sample and mu, weighted by the correlation to the component, floored at 1.
+            double sigma = Math.sqrt(statistics.getVariance(k));
+            sigma = Math.max(sigma, 1.0f);
+
+            nextComponents.add(new BasicComponent(mu, sigma, components.get(k).getTau()));
+        }
+
+        return nextComponents;
+    }
+}
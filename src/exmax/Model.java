@@ -30,18 +30,41 @@ public interface Model {
     int getComponentSize();
 
     /**
-     * Gets the list of samples in the model.
+     * Gets the store of samples in the model. The default copies {@link #getSamples()} into a new store, so
+     * implementations should override it to return the store they hold.
+     *
+     * @return the store of samples in the model
+     */
+    default SampleStore getSampleStore() {
+        return BasicSampleStore.fromList(getSamples());
+    }
+
+    /**
+     * Sets the store of samples in the model. The default passes a list view of the store to
+     * {@link #setSamples(List)}.
+     *
+     * @param sampleStore the store of samples in the model
+     */
+    default void setSampleStore(SampleStore sampleStore) {
+        setSamples(sampleStore.asList());
+    }
+
+    /**
+     * Gets the list of samples in the model. The list is a boxed view of {@link #getSampleStore()} that is
+     * kept for compatibility, so prefer the store in code that iterates over every sample.
      *
      * @return the list of samples in the model
      */
     List<Double> getSamples();
 
     /**
-     * Gets the number of samples in the model.
+     * Gets the number of samples in the model. The count is a long, since a exmax.SegmentedSampleStore can hold
+     * more samples than an int can count, so implementations written against the earlier int return type must be
+     * updated.
      *
-      * @return the number of samples in the model
+     * @return the number of samples in the model
      */
-    int getSampleSize();
+    long getSampleSize();
 
     /**
      * Sets the list of samples in the model.
@@ -58,7 +81,37 @@ public interface Model {
      * @param component the component of interest for the respective likelihood
      * @return the likelihood that the sample is in the specified component, from 0-1
      */
-    double getRelativeSampleLikelihood(Double sample, Component component);
+    double getRelativeSampleLikelihood(double sample, Component component);
+
+    /**
+     * Runs the expectation step of expectation maximization, computing the relative likelihood of every sample
+     * for every component once and summarizing them as the statistics needed by the maximization step. The
+     * statistics may be cached until {@link #setComponents(List)} or {@link #setSampleStore(SampleStore)} is
+     * called, so they must not be modified, and components must not be modified in place. The default computes
+     * them every time with {@link ModelFactory#computeSufficientStatistics(List, SampleStore)}.
+     *
+     * @return the sufficient statistics of the samples for the components in the model
+     */
+    default SufficientStatistics getSufficientStatistics() {
+        return ModelFactory.computeSufficientStatistics(getComponents(), getSampleStore());
+    }
+
+    /**
+     * Gets the total relative likelihood of all samples for each component, which is approximately the number
+     * of samples that we expect correlate to the component. The default reads the weights of
+     * {@link #getSufficientStatistics()}.
+     *
+     * @return the effective number of samples for each component, in the order of {@link #getComponents()}
+     */
+    default double[] getEffectiveSampleSizes() {
+        SufficientStatistics s = getSufficientStatistics();
+        double[] sizes = new double[s.getComponentSize()];
+        for (int k = 0; k < sizes.length; k++) {
+            sizes[k] = s.getWeight(k);
+        }
+
+        return sizes;
+    }
 
     /**
      * Gets the logarithm of the likelihood of the entire model, given the samples.  The value will
@@ -77,12 +130,55 @@ public interface Model {
     double getBayesianInformationCriterion();
 
     /**
-     * Gets the model from the previous iteration of expectation maximization, or null if either no
-     * model exists or the algorithm hasn't been run.
+     * Gets the model from the previous iteration of expectation maximization, or null if no prior model was
+     * set. {@link ModelFactory#maximize(Model)} records iterations in {@link #getIterationTrace()} instead.
      *
      * @return the model from the previous iteration of expectation maximization
      */
     Model getPriorModel();
 
+    /**
+     * Sets the model from the previous iteration of expectation maximization.
+     *
+     * @param priorModel the model from the previous iteration of expectation maximization
+     */
     void setPriorModel(Model priorModel);
+
+    /**
+     * Gets the trace of the iterations of expectation maximization that produced the model, or null if the
+     * model wasn't maximized or tracing was turned off. The default never has a trace.
+     *
+     * @return the iteration trace
+     */
+    default IterationTrace getIterationTrace() {
+        return null;
+    }
+
+    /**
+     * Sets the trace of the iterations of expectation maximization that produced the model. The default
+     * doesn't keep the trace, so implementations should override it along with {@link #getIterationTrace()}.
+     *
+     * @param iterationTrace the iteration trace
+     */
+    default void setIterationTrace(IterationTrace iterationTrace) {
+    }
+
+    /**
+     * Gets the summary of the maximization that produced the model, or null if the model wasn't maximized. The
+     * default never has a summary.
+     *
+     * @return the fit summary
+     */
+    default FitSummary getFitSummary() {
+        return null;
+    }
+
+    /**
+     * Sets the summary of the maximization that produced the model. The default doesn't keep the summary, so
+     * implementations should override it along with {@link #getFitSummary()}.
+     *
+     * @param fitSummary the fit summary
+     */
+    default void setFitSummary(FitSummary fitSummary) {
+    }
 }
@@ -1,17 +1,24 @@
 package exmax;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * exmax.ModelFactory contains functionality for constructing and maximizing models.
  */
 public abstract class ModelFactory {
 
+    /**
+     * The number of samples drawn from a exmax.ShardedSampleStore or exmax.SegmentedSampleStore for the
+     * initializer.
+     */
+    private static final int INITIAL_SUBSAMPLE_SIZE = 10000;
+
     /**
      * The delta ratio is the minimum percentage of the initial log likelihood for which no
      * further iterations will be run.
      */
-    private static double deltaRatio = .001;
+    private static volatile double deltaRatio = .001;
 
     /**
      * Get {@see #deltaRatio}.
@@ -29,6 +36,401 @@ public abstract class ModelFactory {
         ModelFactory.deltaRatio = deltaRatio;
     }
 
+    /**
+     * The initializer that chooses the initial components of new models.
+     */
+    private static volatile Initializer initializer = new RangeInitializer();
+
+    /**
+     * The acceleration used to move from one model to the next during maximization.
+     */
+    private static volatile Acceleration acceleration = Acceleration.NONE;
+
+    /**
+     * Whether maximization also stops once Aitken extrapolation of the log likelihood predicts that less than
+     * the minimum significant improvement remains, rather than only once an iteration improves by less.
+     */
+    private static volatile boolean aitkenStopping = false;
+
+    /**
+     * The mini batch schedule is the increasing fractions of the samples that maximization runs on, one after
+     * another, before refining on every sample. An empty schedule always maximizes on every sample.
+     */
+    private static volatile double[] miniBatchSchedule = new double[0];
+
+    /**
+     * The parallelism is the number of threads used to run the expectation step, where 1 runs it on the
+     * calling thread.
+     */
+    private static volatile int parallelism = 1;
+
+    /**
+     * The chunk size is the maximum number of samples for which the expectation step computes partial
+     * statistics without splitting them further. Results are deterministic for a fixed chunk size.
+     */
+    private static volatile int chunkSize = 65536;
+
+    /**
+     * The truncation tolerance is the fraction of the probability of each component that the expectation step may
+     * ignore when the samples are a exmax.SortedSampleStore, skipping blocks of samples outside the window of the
+     * component. 0 evaluates every component for every sample.
+     */
+    private static volatile double truncationTolerance = 0;
+
+    /**
+     * The search parallelism is the number of models with different numbers of components that are
+     * fit at the same time, where 1 fits them one after another.
+     */
+    private static volatile int searchParallelism = 1;
+
+    /**
+     * The number of restarts is how many differently seeded initial models are maximized for each number of
+     * components, keeping the one with the highest log likelihood.
+     */
+    private static volatile int restarts = 1;
+
+    /**
+     * The prune interval is the number of iterations that every remaining restart runs before the restarts
+     * with the lower half of log likelihoods are dropped, where 0 runs every restart until it converges.
+     */
+    private static volatile int pruneInterval = 5;
+
+    /**
+     * The seed for the initializer of new models, or null to use a different seed every time.
+     */
+    private static volatile Long seed = null;
+
+    /**
+     * The trace capacity is the number of the most recent iterations recorded in the trace of a maximized
+     * model, where 0 turns tracing off.
+     */
+    private static volatile int traceCapacity = 1000;
+
+    /**
+     * The listeners notified of every iteration and every converged maximization.
+     */
+    private static final List<FitListener> fitListeners = new CopyOnWriteArrayList<FitListener>();
+
+    /**
+     * The pool used to run the expectation step when the parallelism is greater than 1.
+     */
+    private static ForkJoinPool pool = null;
+
+    /**
+     * Get {@see #initializer}.
+     * @return {@link #initializer}.
+     */
+    public static Initializer getInitializer() {
+        return initializer;
+    }
+
+    /**
+     * Set {@see #initializer}.
+     * @param initializer {@link #initializer}
+     */
+    public static void setInitializer(Initializer initializer) {
+        if (initializer == null) {
+            throw new IllegalArgumentException("Initializer must not be null");
+        }
+
+        ModelFactory.initializer = initializer;
+    }
+
+    /**
+     * Get {@see #acceleration}.
+     * @return {@link #acceleration}.
+     */
+    public static Acceleration getAcceleration() {
+        return acceleration;
+    }
+
+    /**
+     * Set {@see #acceleration}.
+     * @param acceleration {@link #acceleration}
+     */
+    public static void setAcceleration(Acceleration acceleration) {
+        if (acceleration == null) {
+            throw new IllegalArgumentException("Acceleration must not be null");
+        }
+
+        ModelFactory.acceleration = acceleration;
+    }
+
+    /**
+     * Get {@see #aitkenStopping}.
+     * @return {@link #aitkenStopping}.
+     */
+    public static boolean isAitkenStopping() {
+        return aitkenStopping;
+    }
+
+    /**
+     * Set {@see #aitkenStopping}.
+     * @param aitkenStopping {@link #aitkenStopping}
+     */
+    public static void setAitkenStopping(boolean aitkenStopping) {
+        ModelFactory.aitkenStopping = aitkenStopping;
+    }
+
+    /**
+     * Get {@see #miniBatchSchedule}.
+     * @return {@link #miniBatchSchedule}.
+     */
+    public static double[] getMiniBatchSchedule() {
+        return miniBatchSchedule.clone();
+    }
+
+    /**
+     * Set {@see #miniBatchSchedule}.
+     * @param miniBatchSchedule {@link #miniBatchSchedule}, increasing fractions between 0 and 1
+     */
+    public static void setMiniBatchSchedule(double... miniBatchSchedule) {
+        double prior = 0;
+        for (double fraction : miniBatchSchedule) {
+            if (!(fraction > prior && fraction < 1)) {
+                throw new IllegalArgumentException("Mini batch schedule must increase between 0 and 1, but was " +
+                        Arrays.toString(miniBatchSchedule));
+            }
+
+            prior = fraction;
+        }
+
+        ModelFactory.miniBatchSchedule = miniBatchSchedule.clone();
+    }
+
+    /**
+     * Get {@see #parallelism}.
+     * @return {@link #parallelism}.
+     */
+    public static int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set {@see #parallelism}.
+     * @param parallelism {@link #parallelism}, greater than or equal to 1
+     */
+    public static synchronized void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, but was " + parallelism);
+        }
+
+        // Replace the pool without shutting it down, since a fit may still be using it. Its threads exit once idle.
+        pool = null;
+        ModelFactory.parallelism = parallelism;
+    }
+
+    /**
+     * Get {@see #searchParallelism}.
+     * @return {@link #searchParallelism}.
+     */
+    public static int getSearchParallelism() {
+        return searchParallelism;
+    }
+
+    /**
+     * Set {@see #searchParallelism}.
+     * @param searchParallelism {@link #searchParallelism}, greater than or equal to 1
+     */
+    public static void setSearchParallelism(int searchParallelism) {
+        if (searchParallelism < 1) {
+            throw new IllegalArgumentException("Search parallelism must be at least 1, but was " + searchParallelism);
+        }
+
+        ModelFactory.searchParallelism = searchParallelism;
+    }
+
+    /**
+     * Get {@see #restarts}.
+     * @return {@link #restarts}.
+     */
+    public static int getRestarts() {
+        return restarts;
+    }
+
+    /**
+     * Set {@see #restarts}.
+     * @param restarts {@link #restarts}, greater than or equal to 1
+     */
+    public static void setRestarts(int restarts) {
+        if (restarts < 1) {
+            throw new IllegalArgumentException("Restarts must be at least 1, but was " + restarts);
+        }
+
+        ModelFactory.restarts = restarts;
+    }
+
+    /**
+     * Get {@see #pruneInterval}.
+     * @return {@link #pruneInterval}.
+     */
+    public static int getPruneInterval() {
+        return pruneInterval;
+    }
+
+    /**
+     * Set {@see #pruneInterval}.
+     * @param pruneInterval {@link #pruneInterval}, greater than or equal to 0
+     */
+    public static void setPruneInterval(int pruneInterval) {
+        if (pruneInterval < 0) {
+            throw new IllegalArgumentException("Prune interval must be at least 0, but was " + pruneInterval);
+        }
+
+        ModelFactory.pruneInterval = pruneInterval;
+    }
+
+    /**
+     * Get {@see #seed}.
+     * @return {@link #seed}.
+     */
+    public static Long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Set {@see #seed}.
+     * @param seed {@link #seed}, or null to use a different seed every time
+     */
+    public static void setSeed(Long seed) {
+        ModelFactory.seed = seed;
+    }
+
+    /**
+     * Get {@see #traceCapacity}.
+     * @return {@link #traceCapacity}.
+     */
+    public static int getTraceCapacity() {
+        return traceCapacity;
+    }
+
+    /**
+     * Set {@see #traceCapacity}.
+     * @param traceCapacity {@link #traceCapacity}, greater than or equal to 0
+     */
+    public static void setTraceCapacity(int traceCapacity) {
+        if (traceCapacity < 0) {
+            throw new IllegalArgumentException("Trace capacity must be at least 0, but was " + traceCapacity);
+        }
+
+        ModelFactory.traceCapacity = traceCapacity;
+    }
+
+    /**
+     * Get {@see #chunkSize}.
+     * @return {@link #chunkSize}.
+     */
+    public static int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Set {@see #chunkSize}.
+     * @param chunkSize {@link #chunkSize}, greater than or equal to 1
+     */
+    public static void setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1, but was " + chunkSize);
+        }
+
+        ModelFactory.chunkSize = chunkSize;
+    }
+
+    /**
+     * Add a listener to {@see #fitListeners}.
+     * @param fitListener the listener to add
+     */
+    public static void addFitListener(FitListener fitListener) {
+        fitListeners.add(fitListener);
+    }
+
+    /**
+     * Remove a listener from {@see #fitListeners}.
+     * @param fitListener the listener to remove
+     */
+    public static void removeFitListener(FitListener fitListener) {
+        fitListeners.remove(fitListener);
+    }
+
+    /**
+     * Get {@see #fitListeners}.
+     * @return {@link #fitListeners}, which can't be modified.
+     */
+    public static List<FitListener> getFitListeners() {
+        return Collections.unmodifiableList(fitListeners);
+    }
+
+    /**
+     * Get {@see #truncationTolerance}.
+     * @return {@link #truncationTolerance}.
+     */
+    public static double getTruncationTolerance() {
+        return truncationTolerance;
+    }
+
+    /**
+     * Set {@see #truncationTolerance}.
+     * @param truncationTolerance {@link #truncationTolerance}, greater than or equal to 0 and less than 1
+     */
+    public static void setTruncationTolerance(double truncationTolerance) {
+        if (!(truncationTolerance >= 0 && truncationTolerance < 1)) {
+            throw new IllegalArgumentException("Truncation tolerance must be at least 0 and less than 1, but was " +
+                    truncationTolerance);
+        }
+
+        ModelFactory.truncationTolerance = truncationTolerance;
+    }
+
+    /**
+     * Get the pool for the expectation step, creating it if needed.
+     *
+     * @return the pool, with {@link #parallelism} threads
+     */
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+
+        return pool;
+    }
+
+    /**
+     * Run the expectation step for a list of components over a store of samples, splitting the samples into
+     * chunks of {@link #chunkSize} and running them on {@link #parallelism} threads. The samples of a
+     * exmax.ShardedSampleStore are evaluated by its workers instead, and those of a exmax.SegmentedSampleStore one
+     * segment at a time.
+     *
+     * @param components the components in the model
+     * @param samples the store of samples
+     * @return the sufficient statistics of the samples
+     */
+    public static SufficientStatistics computeSufficientStatistics(List<Component> components, SampleStore samples) {
+
+        // Sharded samples are evaluated by their workers.
+        if (samples instanceof ShardedSampleStore) {
+            return ((ShardedSampleStore) samples).computeSufficientStatistics(components);
+        }
+
+        // Segmented samples are evaluated a segment at a time, in place.
+        if (samples instanceof SegmentedSampleStore) {
+            SegmentedSampleStore segmentedSamples = (SegmentedSampleStore) samples;
+            SufficientStatistics statistics = new SufficientStatistics(components);
+            for (int s = 0; s < segmentedSamples.getSegmentCount(); s++) {
+                statistics.add(computeSufficientStatistics(components, segmentedSamples.getSegment(s)));
+            }
+
+            return statistics;
+        }
+
+
+        int size = chunkSize;
+        if (parallelism == 1 || samples.size() <= size) {
+            return ExpectationTask.computeSequentially(components, samples, size);
+        }
+
+        return getPool().invoke(new ExpectationTask(components, samples, size));
+    }
+
     /**
      * Create a exmax.Model by passing in samples and a number of components.
      *
@@ -37,34 +439,65 @@ public abstract class ModelFactory {
      * @return the generated model
      */
     public static Model createModel(List<Double> samples, int componentSize) {
+        return createModel(BasicSampleStore.fromList(samples), componentSize);
+    }
 
-        // Find the sample max & min.
-        double min = Double.MAX_VALUE;
-        double max = Double.MAX_VALUE * -1;
-        for (int i = 0; i < samples.size(); i++) {
-            min = Math.min(samples.get(i), min);
-            max = Math.max(samples.get(i), max);
-        }
-
-        // Initialize the requested number of components.
-        List<Component> components = new ArrayList<Component>();
-        Random rand = new Random();
-        for (int i = 0; i < componentSize; i++) {
-
-            // Add a small amount of random to the mu of each component to avoid duplicates or mirror values.
-            double mu = (rand.nextDouble() % 1) + min + (i + 1) * (max - min) / (componentSize + 1);
+    /**
+     * Create a exmax.Model by passing in a store of samples and a number of components.
+     *
+     * @param samples the store of samples
+     * @param componentSize the number of components, greater than or equal to 2
+     * @return the generated model
+     */
+    public static Model createModel(SampleStore samples, int componentSize) {
+        return createModel(samples, componentSize, seed == null ? new Random() : new Random(seed));
+    }
 
-            // Initialize sigma to a width that roughly covers the sample set.
-            double sigma = Math.max((max - min) / (2 * (componentSize + 1)), 1f);
+    /**
+     * Create a exmax.Model by passing in a store of samples, a number of components and the seed for the
+     * {@link #initializer}, so that the model can be reproduced.
+     *
+     * @param samples the store of samples
+     * @param componentSize the number of components, greater than or equal to 2
+     * @param seed the seed for the initializer
+     * @return the generated model
+     */
+    public static Model createModel(SampleStore samples, int componentSize, long seed) {
+        return createModel(samples, componentSize, new Random(seed));
+    }
 
-            // Initialize tau to be even for each component. This won't be the case for more complex models.
-            double tau = 1f / componentSize;
+    /**
+     * Create a exmax.Model by passing in a store of samples, a number of components and a source of random.
+     *
+     * @param samples the store of samples
+     * @param componentSize the number of components, greater than or equal to 2
+     * @param rand the source of random for the initializer
+     * @return the generated model
+     */
+    private static Model createModel(SampleStore samples, int componentSize, Random rand) {
 
-            Component component = new BasicComponent(mu, sigma, tau);
-            components.add(component);
+        // Initialize sharded or segmented samples from a subsample, since initializers may read every sample.
+        SampleStore initialSamples = samples;
+        if (samples instanceof ShardedSampleStore || samples instanceof SegmentedSampleStore) {
+            initialSamples = new BasicSampleStore(Subsamples.draw(samples, INITIAL_SUBSAMPLE_SIZE, rand));
         }
 
-        return new BasicModel(components, samples);
+        Initialization initialization = initializer.initialize(initialSamples, componentSize, rand);
+        return new BasicModel(initialization.getComponents(), samples);
+    }
+
+    /**
+     * Choose initial components for a store of samples with the configured {@link #initializer}, reporting
+     * what it cost. Running maximization from each initializer's components shows which initializer reaches
+     * convergence for the least total cost on a given dataset.
+     *
+     * @param samples the store of samples
+     * @param componentSize the number of components, greater than or equal to 2
+     * @param seed the seed for initializers that sample or jitter
+     * @return the initial components and the cost of choosing them
+     */
+    public static Initialization initialize(SampleStore samples, int componentSize, long seed) {
+        return initializer.initialize(samples, componentSize, new Random(seed));
     }
 
     /**
@@ -75,10 +508,169 @@ public abstract class ModelFactory {
      * @return the generated and maximized model
      */
     public static Model createMaximizedModel(List<Double> samples, int components) {
+        return createMaximizedModel(BasicSampleStore.fromList(samples), components);
+    }
+
+    /**
+     * Create a exmax.Model from a store of samples and then run expectation maximization on the model.
+     *
+     * @param samples the store of samples
+     * @param components the number of components, greater than or equal to 2
+     * @return the generated and maximized model
+     */
+    public static Model createMaximizedModel(SampleStore samples, int components) {
+
+        if (restarts > 1) {
+
+            // Derive a seed for each restart, from the configured seed if there is one.
+            Random seeds = seed == null ? new Random() : new Random(seed);
+            long[] restartSeeds = new long[restarts];
+            for (int r = 0; r < restarts; r++) {
+                restartSeeds[r] = seeds.nextLong();
+            }
+
+            return createMaximizedModel(samples, components, restartSeeds);
+        }
+
         Model model = createModel(samples, components);
         return maximize(model);
     }
 
+    /**
+     * Create a exmax.Model for each of the specified seeds and maximize them at the same time, returning the
+     * model with the highest log likelihood. Each restart first runs the {@link #miniBatchSchedule}, drawing its
+     * subsamples from its own seed. Every {@link #pruneInterval} iterations the restarts with the lower half of
+     * log likelihoods are dropped, so that most of the work goes to the most promising restarts.
+     *
+     * @param samples the store of samples
+     * @param components the number of components, greater than or equal to 2
+     * @param seeds the seed for each restart, at least 1
+     * @return the generated and maximized model with the highest log likelihood
+     */
+    public static Model createMaximizedModel(final SampleStore samples, final int components, long[] seeds) {
+        if (seeds.length < 1) {
+            throw new IllegalArgumentException("Restarts need at least 1 seed, but none were given");
+        }
+
+        List<Maximization> maximizations = new ArrayList<Maximization>();
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(seeds.length, Runtime.getRuntime().availableProcessors())));
+
+        try {
+
+            // Create every restart, running through the mini batch schedule if there is one, so that restarts are
+            // only compared on all of the samples.
+            List<Callable<Maximization>> starts = new ArrayList<Callable<Maximization>>();
+            for (final long restartSeed : seeds) {
+                starts.add(new Callable<Maximization>() {
+                    @Override
+                    public Maximization call() {
+                        Model model = createModel(samples, components, restartSeed);
+                        Maximization maximization = new Maximization(model,
+                                drawMiniBatches(samples, components, new Random(restartSeed)));
+                        while (maximization.isMiniBatch()) {
+                            if (Thread.currentThread().isInterrupted()) {
+                                throw new CancellationException("Maximization was interrupted");
+                            }
+
+                            maximization.step();
+                        }
+
+                        return maximization;
+                    }
+                });
+            }
+
+            for (Future<Maximization> start : executor.invokeAll(starts)) {
+                maximizations.add(getResult(start));
+            }
+
+            // A lone restart has nothing to be pruned against, so it runs straight through to convergence.
+            int interval = maximizations.size() == 1 ? 0 : pruneInterval;
+            while (true) {
+
+                // Run every remaining restart for the interval, or until they converge if there is no interval.
+                List<Callable<Object>> steps = new ArrayList<Callable<Object>>();
+                for (Maximization maximization : maximizations) {
+                    steps.add(Executors.callable(stepTask(maximization, interval)));
+                }
+
+                for (Future<Object> step : executor.invokeAll(steps)) {
+                    getResult(step);
+                }
+
+                boolean converged = true;
+                for (Maximization maximization : maximizations) {
+                    converged &= maximization.isConverged();
+                }
+
+                if (converged) {
+                    break;
+                }
+
+                // Keep the restarts with the upper half of log likelihoods, preferring earlier seeds on ties, and
+                // stop the rest so that they are still reported.
+                List<Maximization> ranked = new ArrayList<Maximization>(maximizations);
+                Collections.sort(ranked, new Comparator<Maximization>() {
+                    @Override
+                    public int compare(Maximization a, Maximization b) {
+                        return Double.compare(b.getLogLikelihood(), a.getLogLikelihood());
+                    }
+                });
+
+                maximizations = ranked.subList(0, (ranked.size() + 1) / 2);
+                for (Maximization pruned : ranked.subList(maximizations.size(), ranked.size())) {
+                    pruned.stop(ConvergenceReason.PRUNED);
+                }
+
+                if (maximizations.size() == 1) {
+                    interval = 0;
+                }
+            }
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while maximizing restarts");
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Return the restart with the highest log likelihood, preferring earlier seeds on ties.
+        Maximization best = maximizations.get(0);
+        for (Maximization maximization : maximizations) {
+            if (maximization.getLogLikelihood() > best.getLogLikelihood()) {
+                best = maximization;
+            }
+        }
+
+        return best.getModel();
+    }
+
+    /**
+     * Create a task that runs iterations of a maximization.
+     *
+     * @param maximization the maximization to run
+     * @param iterations the number of iterations to run, or 0 to run until the maximization converges
+     * @return the task
+     */
+    private static Runnable stepTask(final Maximization maximization, final int iterations) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; iterations == 0 || i < iterations; i++) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new CancellationException("Maximization was interrupted");
+                    }
+
+                    if (!maximization.step()) {
+                        return;
+                    }
+                }
+            }
+        };
+    }
+
     /**
      * Create a model by passing in a list of samples, starting with the simplest 2 component model,
      * maximizing the model, and then continuing to add components and maximize until adding a component
@@ -88,6 +680,21 @@ public abstract class ModelFactory {
      * @return the generated and maximized model that best fits the data
      */
     public static Model createMaximizedModel(List<Double> samples) {
+        return createMaximizedModel(BasicSampleStore.fromList(samples));
+    }
+
+    /**
+     * Create a model from a store of samples, adding components until the Bayesian Information Criterion
+     * stops improving. See {@link #createMaximizedModel(List)}.
+     *
+     * @param samples the store of samples
+     * @return the generated and maximized model that best fits the data
+     */
+    public static Model createMaximizedModel(SampleStore samples) {
+
+        if (searchParallelism > 1) {
+            return createMaximizedModelConcurrently(samples);
+        }
 
         int i = 2;
         Model model = createMaximizedModel(samples, i);
@@ -108,6 +715,59 @@ public abstract class ModelFactory {
         }
     }
 
+    /**
+     * Create a model from a store of samples the same way as {@link #createMaximizedModel(SampleStore)}, but
+     * speculatively fit the next {@link #searchParallelism} numbers of components at the same time. Fits for
+     * larger numbers of components are cancelled as soon as the Bayesian Information Criterion stops improving.
+     *
+     * @param samples the store of samples
+     * @return the generated and maximized model that best fits the data
+     */
+    private static Model createMaximizedModelConcurrently(SampleStore samples) {
+
+        ExecutorService executor = Executors.newFixedThreadPool(searchParallelism);
+        Map<Integer, Future<Model>> fits = new HashMap<Integer, Future<Model>>();
+
+        try {
+
+            // Start a window of fits, starting with the simplest 2 component model.
+            int nextSize = 2;
+            while (nextSize < 2 + searchParallelism) {
+                fits.put(nextSize, submitMaximizedModel(executor, samples, nextSize));
+                nextSize++;
+            }
+
+            int i = 2;
+            Model model = getResult(fits.remove(i));
+
+            while (true) {
+                i++;
+
+                // Keep the window full, then wait for the model with 1 additional component.
+                fits.put(nextSize, submitMaximizedModel(executor, samples, nextSize));
+                nextSize++;
+                Model nextModel = getResult(fits.remove(i));
+
+                // If the new model didn't improve enough to justify the component, return the current one.
+                if (model.getBayesianInformationCriterion() >= nextModel.getBayesianInformationCriterion()) {
+                    return model;
+                }
+
+                // Otherwise keep iterating and adding components.
+                model = nextModel;
+            }
+
+        } finally {
+
+            // Stop any fits that are still running, since the comparison has settled.
+            for (Future<Model> fit : fits.values()) {
+                fit.cancel(true);
+            }
+
+            executor.shutdownNow();
+        }
+    }
+
     /**
      * Create a set of models from 2 components through the number of components specified by the
      * max model size, maximizing each model.
@@ -117,20 +777,100 @@ public abstract class ModelFactory {
      * @return the list of maximized models
      */
     public static List<Model> createMaximizedModels(List<Double> samples, int modelSize) {
+        return createMaximizedModels(BasicSampleStore.fromList(samples), modelSize);
+    }
+
+    /**
+     * Create a set of models from a store of samples, from 2 components through the number of components
+     * specified by the max model size, maximizing each model. When {@link #searchParallelism} is greater
+     * than 1 the models are fit at the same time, but they are still returned in order of component size.
+     *
+     * @param samples the store of samples
+     * @param modelSize the maximum number of components in a model
+     * @return the list of maximized models
+     */
+    public static List<Model> createMaximizedModels(SampleStore samples, int modelSize) {
 
         List<Model> models = new ArrayList<Model>();
-        for (int i = 2; i <= modelSize; i++) {
-            Model model = createMaximizedModel(samples, i);
-            models.add(model);
+        if (searchParallelism == 1) {
+            for (int i = 2; i <= modelSize; i++) {
+                Model model = createMaximizedModel(samples, i);
+                models.add(model);
+            }
+
+            return models;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(searchParallelism);
+        List<Future<Model>> fits = new ArrayList<Future<Model>>();
+
+        try {
+            for (int i = 2; i <= modelSize; i++) {
+                fits.add(submitMaximizedModel(executor, samples, i));
+            }
+
+            for (Future<Model> fit : fits) {
+                models.add(getResult(fit));
+            }
+
+        } finally {
+
+            // Stop the remaining fits if one of them failed.
+            for (Future<Model> fit : fits) {
+                fit.cancel(true);
+            }
+
+            executor.shutdownNow();
         }
 
         return models;
     }
 
+    /**
+     * Submit a task to an executor that creates and maximizes a model.
+     *
+     * @param executor the executor to run the task on
+     * @param samples the store of samples
+     * @param components the number of components, greater than or equal to 2
+     * @return the future of the maximized model
+     */
+    private static Future<Model> submitMaximizedModel(ExecutorService executor, final SampleStore samples,
+                                                      final int components) {
+        return executor.submit(new Callable<Model>() {
+            @Override
+            public Model call() {
+                return createMaximizedModel(samples, components);
+            }
+        });
+    }
+
+    /**
+     * Wait for the result of a submitted task, rethrowing any failure on the calling thread.
+     *
+     * @param task the future of the task
+     * @return the result of the task
+     */
+    private static <T> T getResult(Future<T> task) {
+        try {
+            return task.get();
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for a task");
+
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
     /**
      * Runs the expectation maximization algorithm on the specified model, returning a model that is at
      * least as good or better than the current model by adjusting the mu and variance of components.
-     * Prior models will be stored in {@see #priorModel} as a linked list that can be walked to
+     * Iterations are recorded in a bounded {@link IterationTrace} on the model, which can be read to
      * glean information about maximization.
      *
      * @param model the initial model
@@ -138,54 +878,109 @@ public abstract class ModelFactory {
      */
     public static Model maximize(Model model) {
 
-        // Calculate the minimum significant delta, stop for improvement smaller than the value.
-        double delta = -1 * model.getLogLikelihood() * deltaRatio;
+        // Place the components on growing random subsamples first, if there is a mini batch schedule.
+        SampleStore[] miniBatches = new SampleStore[0];
+        if (miniBatchSchedule.length > 0) {
+            miniBatches = drawMiniBatches(model.getSampleStore(), model.getComponentSize(),
+                    seed == null ? new Random() : new Random(seed));
+        }
 
-        // Run iterations on the algorithm until we return a model.
-        while (true) {
+        return converge(new Maximization(model, miniBatches));
+    }
 
-            List<Component> modelComponents = model.getComponents();
-            List<Double> modelSamples = model.getSamples();
-            List<Component> nextModelComponents = new ArrayList<Component>();
+    /**
+     * Refit a maximized exmax.Model after samples are appended to its samples, and optionally the oldest samples
+     * expire. Maximization starts from the components of the model, and the first expectation step reuses the
+     * statistics cached on the model, so only the appended and expired samples are evaluated before the first
+     * iteration. The mini batch schedule is skipped, since the components are already placed. The samples of the
+     * refit model are a exmax.ConcatenatedSampleStore that reads through to the remaining and appended samples,
+     * so no samples are copied.
+     *
+     * @param model the maximized model, whose samples must not be weighted
+     * @param appended the store of samples appended after the samples of the model, which must not be weighted
+     * @param expiredSize the number of samples at the start of the samples of the model that have expired
+     * @return a model of the remaining and appended samples, maximized from the components of the model
+     */
+    public static Model refitModel(Model model, SampleStore appended, long expiredSize) {
 
-            for (Component component : modelComponents) {
+        SampleStore samples = model.getSampleStore();
+        if (samples instanceof WeightedSampleStore || appended instanceof WeightedSampleStore) {
+            throw new IllegalArgumentException("Weighted samples can't be refit incrementally");
+        }
 
-                // Get the total relative likelihood for all samples and a given component.
-                // This measure is approximately the number of samples that we expect correlate to the component.
-                double totalLikelihood = 0;
-                for (Double sample : modelSamples) {
-                    totalLikelihood += model.getRelativeSampleLikelihood(sample, component);
-                }
+        long sampleSize = model.getSampleSize();
+        if (expiredSize < 0 || expiredSize > sampleSize) {
+            throw new IllegalArgumentException("Expired size must be between 0 and " + sampleSize +
+                    ", but was " + expiredSize);
+        }
 
-                // Calculate the given component mu by taking the average of the samples, weighted on correlation
-                // to the component.
-                double mu = 0;
-                for (Double sample : modelSamples) {
-                    mu += sample * model.getRelativeSampleLikelihood(sample, component) / totalLikelihood;
-                }
+        // Read through to the old and appended samples in place, rather than copying them into one array.
+        ConcatenatedSampleStore allSamples = new ConcatenatedSampleStore(samples, appended);
 
-                // Calculate the given component sigma by taking the square root of the square of the distance
-                // between each sample and mu, weighted by the correlation to the component, floored at 1.
-                double sigma = 0;
-                for (Double sample : modelSamples) {
-                    sigma += Math.pow(sample - mu, 2) * model.getRelativeSampleLikelihood(sample, component);
-                }
+        // Update the statistics of the old samples with those of the samples that changed.
+        List<Component> components = new ArrayList<Component>(model.getComponents());
+        SufficientStatistics statistics = new SufficientStatistics(components);
+        statistics.add(model.getSufficientStatistics());
+        statistics.add(computeSufficientStatistics(components, appended));
+        if (expiredSize > 0) {
+            statistics.subtract(computeSufficientStatistics(components, allSamples.getRange(0, expiredSize)));
+        }
+
+        SampleStore remaining = allSamples.getRange(expiredSize, allSamples.getLongSize());
+        return converge(new Maximization(new BasicModel(components, remaining, statistics)));
+    }
+
+    /**
+     * Run iterations of a maximization until it converges.
+     *
+     * @param maximization the maximization to run
+     * @return the maximized model
+     */
+    private static Model converge(Maximization maximization) {
 
-                sigma = Math.sqrt(sigma / totalLikelihood);
-                sigma = Math.max(sigma, 1.0f);
+        // Run iterations on the algorithm until it converges.
+        do {
 
-                nextModelComponents.add(new BasicComponent(mu, sigma, component.getTau()));
+            // Give up if the fit was cancelled, for example by a concurrent search that has settled.
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Maximization was interrupted");
             }
 
-            // Create the new model, return the current one if there isn't enough improvement.
-            Model nextModel = new BasicModel(nextModelComponents, modelSamples);
-            if (nextModel.getLogLikelihood() - model.getLogLikelihood() <= delta) {
-                return model;
+        } while (maximization.step());
+
+        return maximization.getModel();
+    }
+
+    /**
+     * Draw random subsamples of a store of samples, one for each fraction in the {@link #miniBatchSchedule}, for a
+     * maximization to run on in turn, each stage starting from the components of the previous stage and running
+     * until it converges under the same delta ratio.
+     *
+     * @param samples the store of samples
+     * @param componentSize the number of components in the model
+     * @param rand the source of random for drawing the subsamples
+     * @return the mini batches, in order, empty if there is no schedule
+     */
+    private static SampleStore[] drawMiniBatches(SampleStore samples, int componentSize, Random rand) {
+
+        long sampleSize = samples instanceof SegmentedSampleStore ?
+                ((SegmentedSampleStore) samples).getLongSize() : samples.size();
+        List<SampleStore> miniBatches = new ArrayList<SampleStore>();
+
+        for (double fraction : miniBatchSchedule) {
+            long batchSize = (long) Math.ceil(fraction * sampleSize);
+            if (batchSize >= sampleSize || batchSize > Integer.MAX_VALUE) {
+                break;
             }
 
-            // Keep track of the prior model for back tracking, and iterate again.
-            nextModel.setPriorModel(model);
-            model = nextModel;
+            // Skip batches too small to place every component.
+            if (batchSize < 2 * componentSize) {
+                continue;
+            }
+
+            miniBatches.add(new BasicSampleStore(Subsamples.draw(samples, (int) batchSize, rand)));
         }
+
+        return miniBatches.toArray(new SampleStore[miniBatches.size()]);
     }
 }
@@ -0,0 +1,329 @@
+package exmax;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * exmax.ModelFile reads and writes fitted models, so that they can be used again without refitting. The binary
+ * format starts with a {@link #HEADER_SIZE} byte header holding the {@link #MAGIC} number, the format
+ * {@link #VERSION} and the number of models. Each model follows as its number of components, sample size,
+ * iteration count, log likelihood and bayesian information criterion, then the mu, sigma and tau of each
+ * component, all little endian. Models can also be written as JSON for other tools to read.
+ */
+public abstract class ModelFile {
+
+    /**
+     * The magic number at the start of every binary model file, which reads "EXMM" when written little endian.
+     */
+    public static final int MAGIC = 0x4d4d5845;
+
+    /**
+     * The version of the format written by this class.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The number of bytes in the header.
+     */
+    public static final int HEADER_SIZE = 16;
+
+    /**
+     * The number of bytes in each model before its components.
+     */
+    private static final int MODEL_HEADER_SIZE = 40;
+
+    /**
+     * The number of bytes in each component.
+     */
+    private static final int COMPONENT_SIZE = 24;
+
+    /**
+     * Check whether a file is a binary model file by reading its magic number.
+     *
+     * @param filePath the path of the file
+     * @return true if the file starts with {@link #MAGIC}
+     * @throws IOException
+     */
+    public static boolean isModelFile(String filePath) throws IOException {
+
+        FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) { }
+
+            header.flip();
+            return header.remaining() == 4 && header.getInt() == MAGIC;
+
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Write a list of models to a binary model file.
+     *
+     * @param filePath the path of the file
+     * @param models the list of models to write
+     * @throws IOException
+     */
+    public static void write(String filePath, List<Model> models) throws IOException {
+
+        int size = HEADER_SIZE;
+        for (Model model : models) {
+            size += MODEL_HEADER_SIZE + model.getComponentSize() * COMPONENT_SIZE;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(models.size()).putInt(0);
+        for (Model model : models) {
+            buffer.putInt(model.getComponentSize()).putInt(0);
+            buffer.putLong(model.getSampleSize());
+            buffer.putLong(getIterationCount(model));
+            buffer.putDouble(model.getLogLikelihood());
+            buffer.putDouble(model.getBayesianInformationCriterion());
+            for (Component component : model.getComponents()) {
+                buffer.putDouble(component.getMu()).putDouble(component.getSigma()).putDouble(component.getTau());
+            }
+        }
+
+        buffer.flip();
+        FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Read the models in a binary model file.
+     *
+     * @param filePath the path of the file
+     * @return the list of models and what was known about them when they were written
+     * @throws IOException if the file can't be read or isn't a valid binary model file
+     */
+    public static List<Record> read(String filePath) throws IOException {
+
+        ByteBuffer buffer;
+        FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(filePath + " is too large to be a binary model file");
+            }
+
+            buffer = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) { }
+            buffer.flip();
+
+        } finally {
+            channel.close();
+        }
+
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException(filePath + " is not a binary model file");
+        }
+
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException(filePath + " has unsupported version " + version);
+        }
+
+        int modelSize = buffer.getInt();
+        buffer.getInt();
+        if (modelSize < 0) {
+            throw new IOException(filePath + " has a negative model count");
+        }
+
+        List<Record> records = new ArrayList<Record>();
+        for (int i = 0; i < modelSize; i++) {
+            if (buffer.remaining() < MODEL_HEADER_SIZE) {
+                throw new IOException(filePath + " is truncated, expected " + modelSize + " models");
+            }
+
+            int componentSize = buffer.getInt();
+            buffer.getInt();
+            long sampleSize = buffer.getLong();
+            long iterationCount = buffer.getLong();
+            double logLikelihood = buffer.getDouble();
+            double bayesianInformationCriterion = buffer.getDouble();
+            if (componentSize < 0 || buffer.remaining() < (long) componentSize * COMPONENT_SIZE) {
+                throw new IOException(filePath + " is truncated, expected " + componentSize + " components");
+            }
+
+            List<Component> components = new ArrayList<Component>();
+            for (int k = 0; k < componentSize; k++) {
+                components.add(new BasicComponent(buffer.getDouble(), buffer.getDouble(), buffer.getDouble()));
+            }
+
+            Model model = new BasicModel(components, new BasicSampleStore(new double[0]));
+            records.add(new Record(model, sampleSize, iterationCount, logLikelihood, bayesianInformationCriterion));
+        }
+
+        return records;
+    }
+
+    /**
+     * Write a list of models to a JSON file, with the same fields as the binary format.
+     *
+     * @param filePath the path of the file
+     * @param models the list of models to write
+     * @throws IOException
+     */
+    public static void writeJson(String filePath, List<Model> models) throws IOException {
+
+        BufferedWriter bw = new BufferedWriter(new FileWriter(filePath));
+        try {
+            bw.write("{\"version\": " + VERSION + ", \"models\": [");
+            for (int i = 0; i < models.size(); i++) {
+                Model model = models.get(i);
+                bw.write(i == 0 ? "" : ",");
+                bw.write(System.lineSeparator() + "  {\"sampleSize\": " + model.getSampleSize() +
+                        ", \"iterationCount\": " + getIterationCount(model) +
+                        ", \"logLikelihood\": " + toJson(model.getLogLikelihood()) +
+                        ", \"bayesianInformationCriterion\": " + toJson(model.getBayesianInformationCriterion()) +
+                        ", \"components\": [");
+
+                List<Component> components = model.getComponents();
+                for (int k = 0; k < components.size(); k++) {
+                    Component component = components.get(k);
+                    bw.write((k == 0 ? "" : ",") + System.lineSeparator() + "    {\"mu\": " +
+                            toJson(component.getMu()) + ", \"sigma\": " + toJson(component.getSigma()) +
+                            ", \"tau\": " + toJson(component.getTau()) + "}");
+                }
+
+                bw.write("]}");
+            }
+
+            bw.write("]}" + System.lineSeparator());
+
+        } finally {
+            bw.close();
+        }
+    }
+
+    /**
+     * Format a double for JSON, which has no representation for values that aren't finite.
+     *
+     * @param value the value
+     * @return the shortest text that reads back as the same value, or null
+     */
+    private static String toJson(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? "null" : Double.toString(value);
+    }
+
+    /**
+     * Get the number of iterations recorded while maximizing a model.
+     *
+     * @param model the model
+     * @return the number of iterations in the trace of the model, or 0 if it has none
+     */
+    private static long getIterationCount(Model model) {
+        IterationTrace trace = model.getIterationTrace();
+        return trace != null ? trace.getIterationCount() : 0;
+    }
+
+    /**
+     * exmax.ModelFile.Record holds a model read from a model file, along with what was known about the model
+     * when it was written. The model has no samples, so its own log likelihood is that of an empty sample.
+     */
+    public static class Record {
+
+        /**
+         * The model, with its components and no samples.
+         */
+        private final Model model;
+
+        /**
+         * The number of samples the model was fit to.
+         */
+        private final long sampleSize;
+
+        /**
+         * The number of iterations recorded while maximizing the model.
+         */
+        private final long iterationCount;
+
+        /**
+         * The log likelihood of the model on the samples it was fit to.
+         */
+        private final double logLikelihood;
+
+        /**
+         * The bayesian information criterion of the model on the samples it was fit to.
+         */
+        private final double bayesianInformationCriterion;
+
+        /**
+         * Construct a exmax.ModelFile.Record by passing in a model and what was known about it.
+         *
+         * @param model the model
+         * @param sampleSize the number of samples the model was fit to
+         * @param iterationCount the number of iterations recorded while maximizing the model
+         * @param logLikelihood the log likelihood of the model on the samples it was fit to
+         * @param bayesianInformationCriterion the bayesian information criterion of the model
+         */
+        public Record(Model model, long sampleSize, long iterationCount, double logLikelihood,
+                      double bayesianInformationCriterion) {
+            this.model = model;
+            this.sampleSize = sampleSize;
+            this.iterationCount = iterationCount;
+            this.logLikelihood = logLikelihood;
+            this.bayesianInformationCriterion = bayesianInformationCriterion;
+        }
+
+        /**
+         * Gets the model, with its components and no samples.
+         *
+         * @return the model
+         */
+        public Model getModel() {
+            return model;
+        }
+
+        /**
+         * Gets the number of samples the model was fit to.
+         *
+         * @return the number of samples
+         */
+        public long getSampleSize() {
+            return sampleSize;
+        }
+
+        /**
+         * Gets the number of iterations recorded while maximizing the model.
+         *
+         * @return the number of iterations
+         */
+        public long getIterationCount() {
+            return iterationCount;
+        }
+
+        /**
+         * Gets the log likelihood of the model on the samples it was fit to.
+         *
+         * @return the log likelihood
+         */
+        public double getLogLikelihood() {
+            return logLikelihood;
+        }
+
+        /**
+         * Gets the bayesian information criterion of the model on the samples it was fit to.
+         *
+         * @return the bayesian information criterion, where higher is better
+         */
+        public double getBayesianInformationCriterion() {
+            return bayesianInformationCriterion;
+        }
+    }
+}
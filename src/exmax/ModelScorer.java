@@ -0,0 +1,500 @@
+package exmax;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.DoubleToIntFunction;
+import java.util.function.DoubleUnaryOperator;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+
+/**
+ * exmax.ModelScorer scores new samples against a fitted model in bulk: the component each sample most likely
+ * belongs to, the relative likelihood of every component for each sample, or the log density of each sample.
+ * The components and the log of their taus are captured when the scorer is created, so later changes to the
+ * model aren't seen, and the scorer can be shared between threads. A scorer with more than one thread owns a pool,
+ * which is shut down when the scorer is closed.
+ */
+public class ModelScorer implements Closeable {
+
+    /**
+     * The number of samples evaluated at a time, small enough for the block and its likelihoods to stay in cache.
+     */
+    private static final int BLOCK_SIZE = 1024;
+
+    /**
+     * The components in the model.
+     */
+    private final Component[] components;
+
+    /**
+     * The log of the tau of each component.
+     */
+    private final double[] logTaus;
+
+    /**
+     * The number of threads used to score a store of samples, where 1 scores them on the calling thread.
+     */
+    private final int parallelism;
+
+    /**
+     * The maximum number of samples scored by a single task when scoring in parallel.
+     */
+    private final int chunkSize;
+
+    /**
+     * The pool used to score in parallel, created the first time it is needed.
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * Whether the scorer has been closed, after which stores of samples can't be scored in parallel.
+     */
+    private boolean closed;
+
+    /**
+     * The kinds of output that a scoring task can write.
+     */
+    private enum Output {
+        ASSIGNMENT,
+        POSTERIOR,
+        LOG_DENSITY
+    }
+
+    /**
+     * Construct a exmax.ModelScorer that scores on the calling thread.
+     *
+     * @param model the fitted model
+     */
+    public ModelScorer(Model model) {
+        this(model, 1);
+    }
+
+    /**
+     * Construct a exmax.ModelScorer that scores stores of samples on a number of threads.
+     *
+     * @param model the fitted model
+     * @param parallelism the number of threads, greater than or equal to 1
+     */
+    public ModelScorer(Model model, int parallelism) {
+        this(model, parallelism, 65536);
+    }
+
+    /**
+     * Construct a exmax.ModelScorer that scores stores of samples on a number of threads, splitting them into
+     * chunks of a given size.
+     *
+     * @param model the fitted model
+     * @param parallelism the number of threads, greater than or equal to 1
+     * @param chunkSize the maximum number of samples scored by a single task, greater than or equal to 1
+     */
+    public ModelScorer(Model model, int parallelism, int chunkSize) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, but was " + parallelism);
+        }
+
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1, but was " + chunkSize);
+        }
+
+        List<Component> modelComponents = model.getComponents();
+        this.components = modelComponents.toArray(new Component[modelComponents.size()]);
+        this.logTaus = new double[components.length];
+        for (int k = 0; k < components.length; k++) {
+            logTaus[k] = Math.log(components[k].getTau());
+        }
+
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Gets the number of components that samples are scored against.
+     *
+     * @return the number of components
+     */
+    public int getComponentSize() {
+        return components.length;
+    }
+
+    /**
+     * Gets the component that a sample most likely belongs to.
+     *
+     * @param sample the sample value
+     * @return the index of the component in the model
+     */
+    public int classify(double sample) {
+
+        int best = 0;
+        double bestLogLikelihood = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < components.length; k++) {
+            double l = components[k].getSampleLogLikelihood(sample) + logTaus[k];
+            if (l > bestLogLikelihood) {
+                best = k;
+                bestLogLikelihood = l;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Gets the log of the density of the model at a sample, the log of the sum of tau times the likelihood over
+     * all components.
+     *
+     * @param sample the sample value
+     * @return the log density
+     */
+    public double getLogDensity(double sample) {
+
+        // Factor the largest component out of the total so that it can't underflow.
+        double m = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < components.length; k++) {
+            m = Math.max(m, components[k].getSampleLogLikelihood(sample) + logTaus[k]);
+        }
+
+        double t = 0;
+        for (int k = 0; k < components.length; k++) {
+            t += Math.exp(components[k].getSampleLogLikelihood(sample) + logTaus[k] - m);
+        }
+
+        return m + Math.log(t);
+    }
+
+    /**
+     * Assign each sample in a range of an array to the component it most likely belongs to.
+     *
+     * @param samples the array of samples
+     * @param offset the index of the first sample
+     * @param length the number of samples
+     * @param out the array that receives the index of the component for each sample, from index 0
+     */
+    public void classify(double[] samples, int offset, int length, int[] out) {
+        score(samples, offset, length, Output.ASSIGNMENT, out, null, 0, new Scratch(components.length));
+    }
+
+    /**
+     * Get the relative likelihood of every component for each sample in a range of an array.
+     *
+     * @param samples the array of samples
+     * @param offset the index of the first sample
+     * @param length the number of samples
+     * @param out the array that receives the relative likelihoods from index 0, where the relative likelihood
+     *            of component k for sample i is at index i * {@link #getComponentSize()} + k
+     */
+    public void getPosteriors(double[] samples, int offset, int length, double[] out) {
+        score(samples, offset, length, Output.POSTERIOR, null, out, 0, new Scratch(components.length));
+    }
+
+    /**
+     * Get the log density of the model at each sample in a range of an array.
+     *
+     * @param samples the array of samples
+     * @param offset the index of the first sample
+     * @param length the number of samples
+     * @param out the array that receives the log density of each sample, from index 0
+     */
+    public void getLogDensities(double[] samples, int offset, int length, double[] out) {
+        score(samples, offset, length, Output.LOG_DENSITY, null, out, 0, new Scratch(components.length));
+    }
+
+    /**
+     * Assign each sample in a store to the component it most likely belongs to.
+     *
+     * @param samples the store of samples
+     * @return the index of the component for each sample
+     */
+    public int[] classify(SampleStore samples) {
+        int[] out = new int[samples.size()];
+        score(samples, Output.ASSIGNMENT, out, null);
+        return out;
+    }
+
+    /**
+     * Get the relative likelihood of every component for each sample in a store.
+     *
+     * @param samples the store of samples
+     * @return the relative likelihoods, where the relative likelihood of component k for sample i is at index
+     *         i * {@link #getComponentSize()} + k
+     * @throws ArithmeticException if there are too many samples and components for a single array
+     */
+    public double[] getPosteriors(SampleStore samples) {
+        double[] out = new double[Math.multiplyExact(samples.size(), components.length)];
+        score(samples, Output.POSTERIOR, null, out);
+        return out;
+    }
+
+    /**
+     * Get the log density of the model at each sample in a store.
+     *
+     * @param samples the store of samples
+     * @return the log density of each sample
+     */
+    public double[] getLogDensities(SampleStore samples) {
+        double[] out = new double[samples.size()];
+        score(samples, Output.LOG_DENSITY, null, out);
+        return out;
+    }
+
+    /**
+     * Assign each sample in a stream to the component it most likely belongs to, as the stream is consumed.
+     *
+     * @param samples the stream of samples
+     * @return a stream of the index of the component for each sample
+     */
+    public IntStream classify(DoubleStream samples) {
+        return samples.mapToInt(new DoubleToIntFunction() {
+            @Override
+            public int applyAsInt(double sample) {
+                return classify(sample);
+            }
+        });
+    }
+
+    /**
+     * Get the log density of the model at each sample in a stream, as the stream is consumed.
+     *
+     * @param samples the stream of samples
+     * @return a stream of the log density of each sample
+     */
+    public DoubleStream getLogDensities(DoubleStream samples) {
+        return samples.map(new DoubleUnaryOperator() {
+            @Override
+            public double applyAsDouble(double sample) {
+                return getLogDensity(sample);
+            }
+        });
+    }
+
+    /**
+     * Score a store of samples, in parallel when there is more than one chunk and more than one thread.
+     *
+     * @param samples the store of samples
+     * @param output the kind of output to write
+     * @param assignments the array that receives assignments, or null
+     * @param values the array that receives relative likelihoods or log densities, or null
+     */
+    private void score(SampleStore samples, Output output, int[] assignments, double[] values) {
+
+        if (parallelism == 1 || samples.size() <= chunkSize) {
+            score(samples, output, assignments, values, 0);
+        } else {
+            getPool().invoke(new ScoringTask(samples, 0, output, assignments, values));
+        }
+    }
+
+    /**
+     * Score a store of samples on the calling thread, copying one block at a time out of the store so that any
+     * store is scored through the same array path.
+     *
+     * @param samples the store of samples
+     * @param output the kind of output to write
+     * @param assignments the array that receives assignments, or null
+     * @param values the array that receives relative likelihoods or log densities, or null
+     * @param outIndex the index of the first sample in the output arrays
+     */
+    private void score(SampleStore samples, Output output, int[] assignments, double[] values, int outIndex) {
+
+        Scratch scratch = new Scratch(components.length);
+        for (int start = 0; start < samples.size(); start += BLOCK_SIZE) {
+            int length = Math.min(BLOCK_SIZE, samples.size() - start);
+            samples.copyTo(start, scratch.block, 0, length);
+            score(scratch.block, 0, length, output, assignments, values, outIndex + start, scratch);
+        }
+    }
+
+    /**
+     * Score a range of an array of samples one block at a time.
+     *
+     * @param samples the array of samples
+     * @param offset the index of the first sample
+     * @param length the number of samples
+     * @param output the kind of output to write
+     * @param assignments the array that receives assignments, or null
+     * @param values the array that receives relative likelihoods or log densities, or null
+     * @param outIndex the index of the first sample in the output arrays
+     * @param scratch the working arrays
+     */
+    private void score(double[] samples, int offset, int length, Output output, int[] assignments,
+                       double[] values, int outIndex, Scratch scratch) {
+
+        int componentSize = components.length;
+        double[][] logLikelihoods = scratch.logLikelihoods;
+        for (int start = 0; start < length; start += BLOCK_SIZE) {
+            int blockLength = Math.min(BLOCK_SIZE, length - start);
+
+            // Evaluate each component once for the whole block, in log space so nothing underflows.
+            for (int k = 0; k < componentSize; k++) {
+                components[k].getSampleLogLikelihoods(samples, offset + start, blockLength, logLikelihoods[k]);
+            }
+
+            for (int i = 0; i < blockLength; i++) {
+                int o = outIndex + start + i;
+
+                // Weight each component by tau, and find the largest.
+                int best = 0;
+                double m = Double.NEGATIVE_INFINITY;
+                for (int k = 0; k < componentSize; k++) {
+                    double l = logLikelihoods[k][i] + logTaus[k];
+                    logLikelihoods[k][i] = l;
+                    if (l > m) {
+                        best = k;
+                        m = l;
+                    }
+                }
+
+                if (output == Output.ASSIGNMENT) {
+                    assignments[o] = best;
+                    continue;
+                }
+
+                // Get the total across components, relative to the largest.
+                double t = 0;
+                for (int k = 0; k < componentSize; k++) {
+                    t += Math.exp(logLikelihoods[k][i] - m);
+                }
+
+                if (output == Output.LOG_DENSITY) {
+                    values[o] = m + Math.log(t);
+                    continue;
+                }
+
+                for (int k = 0; k < componentSize; k++) {
+                    double r = Math.exp(logLikelihoods[k][i] - m) / t;
+                    values[o * componentSize + k] = Double.isNaN(r) ? 0 : r;
+                }
+            }
+        }
+    }
+
+    /**
+     * Shut down the pool used to score in parallel, if one was created. Single samples, arrays and stores that
+     * fit in one chunk can still be scored afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    /**
+     * Get the pool for scoring in parallel, creating it if needed.
+     *
+     * @return the pool, with {@link #parallelism} threads
+     * @throws IllegalStateException if the scorer has been closed
+     */
+    private synchronized ForkJoinPool getPool() {
+        if (closed) {
+            throw new IllegalStateException("Scorer is closed");
+        }
+
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+
+        return pool;
+    }
+
+    /**
+     * exmax.ModelScorer.Scratch holds the working arrays for scoring one block of samples at a time.
+     */
+    private static class Scratch {
+
+        /**
+         * The log likelihood of each component for each sample in a block, weighted by tau.
+         */
+        private final double[][] logLikelihoods;
+
+        /**
+         * The block of samples copied out of a store.
+         */
+        private final double[] block;
+
+        /**
+         * Construct a exmax.ModelScorer.Scratch for a number of components.
+         *
+         * @param componentSize the number of components
+         */
+        private Scratch(int componentSize) {
+            this.logLikelihoods = new double[componentSize][BLOCK_SIZE];
+            this.block = new double[BLOCK_SIZE];
+        }
+    }
+
+    /**
+     * exmax.ModelScorer.ScoringTask scores a range of a store of samples, splitting it in half until it is no
+     * larger than the chunk size.
+     */
+    private class ScoringTask extends RecursiveAction {
+
+        /**
+         * The version of the serialized form, which tasks inherit from java.util.concurrent.ForkJoinTask.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The range of samples that the task is responsible for.
+         */
+        private final SampleStore samples;
+
+        /**
+         * The index of the first sample of the range in the output arrays.
+         */
+        private final int outIndex;
+
+        /**
+         * The kind of output to write.
+         */
+        private final Output output;
+
+        /**
+         * The array that receives assignments, or null.
+         */
+        private final int[] assignments;
+
+        /**
+         * The array that receives relative likelihoods or log densities, or null.
+         */
+        private final double[] values;
+
+        /**
+         * Construct a exmax.ModelScorer.ScoringTask by passing in a range of samples and where to write them.
+         *
+         * @param samples the range of samples
+         * @param outIndex the index of the first sample of the range in the output arrays
+         * @param output the kind of output to write
+         * @param assignments the array that receives assignments, or null
+         * @param values the array that receives relative likelihoods or log densities, or null
+         */
+        private ScoringTask(SampleStore samples, int outIndex, Output output, int[] assignments,
+                            double[] values) {
+            this.samples = samples;
+            this.outIndex = outIndex;
+            this.output = output;
+            this.assignments = assignments;
+            this.values = values;
+        }
+
+        /**
+         * @inheritDoc
+         */
+        @Override
+        protected void compute() {
+
+            int size = samples.size();
+            if (size > chunkSize) {
+                int middle = size / 2;
+                invokeAll(new ScoringTask(samples.range(0, middle), outIndex, output, assignments, values),
+                        new ScoringTask(samples.range(middle, size), outIndex + middle, output, assignments,
+                                values));
+                return;
+            }
+
+            score(samples, output, assignments, values, outIndex);
+        }
+    }
+}
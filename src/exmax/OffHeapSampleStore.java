@@ -0,0 +1,372 @@
+package exmax;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * exmax.OffHeapSampleStore provides a exmax.SegmentedSampleStore backed by direct or memory mapped buffers, so
+ * that the samples are outside the heap and their number is only limited by memory. Every segment holds the same
+ * power of two number of samples except for the last, so a long index splits into a segment and an offset with a
+ * shift and a mask. A range of the store is a view that shares its segments, starting at an offset into them.
+ */
+public class OffHeapSampleStore implements SegmentedSampleStore {
+
+    /**
+     * The number of bits of a sample index that address a sample within a segment, for stores built in memory.
+     */
+    public static final int SEGMENT_SHIFT = 24;
+
+    /**
+     * The buffers of samples, each holding 1 << {@link #segmentShift} samples except for the last.
+     */
+    private final DoubleBuffer[] segments;
+
+    /**
+     * The number of bits of a sample index that address a sample within a segment.
+     */
+    private final int segmentShift;
+
+    /**
+     * The index of the first sample in the store, across all segments.
+     */
+    private final long offset;
+
+    /**
+     * The number of samples in the store.
+     */
+    private final long size;
+
+    /**
+     * Construct a exmax.OffHeapSampleStore by passing in buffers of samples.
+     *
+     * @param segments the buffers, each holding 1 << segmentShift samples from position 0 except for the last
+     * @param segmentShift the number of bits of a sample index that address a sample within a segment, at most
+     *                     {@link MappedSampleStore#SEGMENT_SHIFT}
+     * @param size the number of samples in the store
+     */
+    public OffHeapSampleStore(DoubleBuffer[] segments, int segmentShift, long size) {
+        this(segments, segmentShift, 0, size);
+    }
+
+    /**
+     * Construct a exmax.OffHeapSampleStore by passing in buffers of samples and the range of them in the store.
+     *
+     * @param segments the buffers, each holding 1 << segmentShift samples from position 0 except for the last
+     * @param segmentShift the number of bits of a sample index that address a sample within a segment, at most
+     *                     {@link MappedSampleStore#SEGMENT_SHIFT}
+     * @param offset the index of the first sample in the store, across all segments
+     * @param size the number of samples in the store
+     */
+    public OffHeapSampleStore(DoubleBuffer[] segments, int segmentShift, long offset, long size) {
+        if (segmentShift < 1 || segmentShift > MappedSampleStore.SEGMENT_SHIFT) {
+            throw new IllegalArgumentException("Segment shift must be between 1 and " +
+                    MappedSampleStore.SEGMENT_SHIFT + ", but was " + segmentShift);
+        }
+
+        this.segments = segments;
+        this.segmentShift = segmentShift;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    /**
+     * Create a exmax.OffHeapSampleStore by copying a store of samples, such as one from a loader, off the heap.
+     *
+     * @param samples the store of samples
+     * @return a store of the same samples outside the heap
+     */
+    public static OffHeapSampleStore copyOf(SampleStore samples) {
+        Builder builder = new Builder();
+        builder.addAll(samples);
+        return builder.build();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public long getLongSize() {
+        return size;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public double getSample(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+        }
+
+        long i = offset + index;
+        return segments[(int) (i >>> segmentShift)].get((int) (i & ((1 << segmentShift) - 1)));
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public int getSegmentCount() {
+        if (size == 0) {
+            return 0;
+        }
+
+        return (int) (((offset + size - 1) >>> segmentShift) - (offset >>> segmentShift)) + 1;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public SampleStore getSegment(int segment) {
+
+        // Cover the part of the buffer that falls within the range of the store.
+        int buffer = (int) (offset >>> segmentShift) + segment;
+        long bufferStart = (long) buffer << segmentShift;
+        long start = Math.max(offset, bufferStart);
+        long end = Math.min(offset + size, bufferStart + (1L << segmentShift));
+        return new MappedSampleStore(new DoubleBuffer[] { segments[buffer] }, (int) (start - bufferStart),
+                (int) (end - start));
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public SegmentedSampleStore getRange(long fromIndex, long toIndex) {
+        if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Range " + fromIndex + " to " + toIndex + " of " + size);
+        }
+
+        return new OffHeapSampleStore(segments, segmentShift, offset + fromIndex, toIndex - fromIndex);
+    }
+
+    /**
+     * Copy samples from a long index of the store into an array.
+     *
+     * @param index the index of the first sample to copy
+     * @param destination the array to copy into
+     * @param destinationIndex the index in the array of the first copied sample
+     * @param length the number of samples to copy
+     */
+    public void copyTo(long index, double[] destination, int destinationIndex, int length) {
+        if (index < 0 || length < 0 || index > size - length) {
+            throw new IndexOutOfBoundsException("Range " + index + " to " + (index + length) + " of " + size);
+        }
+
+        // Copy from each segment that the range covers in turn.
+        int mask = (1 << segmentShift) - 1;
+        long i = offset + index;
+        while (length > 0) {
+            DoubleBuffer segment = segments[(int) (i >>> segmentShift)].duplicate();
+            int position = (int) (i & mask);
+            int count = Math.min(length, (1 << segmentShift) - position);
+            segment.position(position);
+            segment.get(destination, destinationIndex, count);
+            i += count;
+            destinationIndex += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public int size() {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Store has " + size + " samples, more than an int can index");
+        }
+
+        return (int) size;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public double get(int index) {
+        return getSample(index);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public SampleStore range(int fromIndex, int toIndex) {
+        if (toIndex > size()) {
+            throw new IndexOutOfBoundsException("Range " + fromIndex + " to " + toIndex + " of " + size);
+        }
+
+        return getRange(fromIndex, toIndex);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void copyTo(int index, double[] destination, int destinationIndex, int length) {
+        copyTo((long) index, destination, destinationIndex, length);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public double[] toArray() {
+        double[] samples = new double[size()];
+        copyTo(0L, samples, 0, samples.length);
+        return samples;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public List<Double> asList() {
+        return new SampleStoreList(this);
+    }
+
+    /**
+     * Allocate a buffer outside the heap.
+     *
+     * @param capacity the number of samples the buffer holds
+     * @return the buffer
+     */
+    private static DoubleBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity * 8).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    }
+
+    /**
+     * exmax.OffHeapSampleStore.Builder fills a exmax.OffHeapSampleStore one sample or store at a time, allocating
+     * a segment outside the heap whenever the last one is full.
+     */
+    public static class Builder {
+
+        /**
+         * The number of samples copied through the heap at a time when adding a store.
+         */
+        private static final int BLOCK_SIZE = 8192;
+
+        /**
+         * The full segments, followed by the segment being filled.
+         */
+        private final List<DoubleBuffer> segments;
+
+        /**
+         * The number of samples added so far.
+         */
+        private long size;
+
+        /**
+         * Construct an empty exmax.OffHeapSampleStore.Builder.
+         */
+        public Builder() {
+            this.segments = new ArrayList<DoubleBuffer>();
+            this.size = 0;
+        }
+
+        /**
+         * Add a sample.
+         *
+         * @param sample the sample value
+         */
+        public void add(double sample) {
+            current().put(sample);
+            size++;
+        }
+
+        /**
+         * Add a range of an array of samples.
+         *
+         * @param samples the array of samples
+         * @param offset the index of the first sample
+         * @param length the number of samples
+         */
+        public void add(double[] samples, int offset, int length) {
+            while (length > 0) {
+                DoubleBuffer segment = current();
+                int count = Math.min(length, segment.remaining());
+                segment.put(samples, offset, count);
+                offset += count;
+                length -= count;
+                size += count;
+            }
+        }
+
+        /**
+         * Add every sample in a store, a block at a time.
+         *
+         * @param samples the store of samples
+         */
+        public void addAll(SampleStore samples) {
+
+            // Copy each segment of a segmented store in turn, since it may be too large to index with an int.
+            if (samples instanceof SegmentedSampleStore) {
+                SegmentedSampleStore segmentedSamples = (SegmentedSampleStore) samples;
+                for (int s = 0; s < segmentedSamples.getSegmentCount(); s++) {
+                    addAll(segmentedSamples.getSegment(s));
+                }
+
+                return;
+            }
+
+            double[] block = new double[BLOCK_SIZE];
+            for (int i = 0; i < samples.size(); i += BLOCK_SIZE) {
+                int count = Math.min(BLOCK_SIZE, samples.size() - i);
+                samples.copyTo(i, block, 0, count);
+                add(block, 0, count);
+            }
+        }
+
+        /**
+         * Gets the number of samples added so far.
+         *
+         * @return the number of samples
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Build the store of the samples added so far. The last segment is copied into a buffer of its exact
+         * size, and the builder shouldn't be used afterwards.
+         *
+         * @return the store of samples
+         */
+        public OffHeapSampleStore build() {
+
+            DoubleBuffer[] buffers = new DoubleBuffer[segments.size()];
+            for (int s = 0; s < buffers.length; s++) {
+                DoubleBuffer segment = segments.get(s);
+                segment.flip();
+                if (s == buffers.length - 1 && segment.remaining() < segment.capacity()) {
+                    DoubleBuffer trimmed = allocate(segment.remaining());
+                    trimmed.put(segment);
+                    trimmed.flip();
+                    segment = trimmed;
+                }
+
+                buffers[s] = segment;
+            }
+
+            return new OffHeapSampleStore(buffers, SEGMENT_SHIFT, size);
+        }
+
+        /**
+         * Get the segment being filled, allocating a new one if the last is full.
+         *
+         * @return the segment with room for at least one sample
+         */
+        private DoubleBuffer current() {
+            if (segments.isEmpty() || !segments.get(segments.size() - 1).hasRemaining()) {
+                segments.add(allocate(1 << SEGMENT_SHIFT));
+            }
+
+            return segments.get(segments.size() - 1);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package exmax;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+/**
+ * exmax.OnlineMaximization runs stepwise expectation maximization over a stream of samples that is consumed in
+ * batches. Only the running weight, mean and variance of each component are kept between batches, so memory
+ * doesn't grow with the number of samples. After batch t the running statistics move towards the statistics of
+ * the batch by a step size of (t + stepSizeOffset) ^ -stepSizeDecay, where a decay between 0.5 and 1 converges.
+ */
+public class OnlineMaximization {
+
+    /**
+     * The default step size decay.
+     */
+    public static final double DEFAULT_STEP_SIZE_DECAY = 0.6;
+
+    /**
+     * The default step size offset.
+     */
+    public static final double DEFAULT_STEP_SIZE_OFFSET = 2;
+
+    /**
+     * The default number of samples in a batch when consuming a stream.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    /**
+     * The running average relative likelihood of a sample for each component.
+     */
+    private final double[] weights;
+
+    /**
+     * The running weighted mean of the samples for each component.
+     */
+    private final double[] means;
+
+    /**
+     * The running weighted variance of the samples for each component.
+     */
+    private final double[] variances;
+
+    /**
+     * The tau value of each component, which is kept fixed the same way as {@link ModelFactory#maximize(Model)}.
+     */
+    private final double[] taus;
+
+    /**
+     * The exponent by which the step size decays with the number of batches.
+     */
+    private double stepSizeDecay = DEFAULT_STEP_SIZE_DECAY;
+
+    /**
+     * The offset added to the number of batches before the step size decays, which slows down early steps.
+     */
+    private double stepSizeOffset = DEFAULT_STEP_SIZE_OFFSET;
+
+    /**
+     * The number of samples in a batch when consuming a stream.
+     */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * The number of batches consumed so far.
+     */
+    private long batches;
+
+    /**
+     * The number of samples consumed so far.
+     */
+    private long sampleCount;
+
+    /**
+     * The most recent batch, which snapshots use to evaluate the model.
+     */
+    private SampleStore lastBatch;
+
+    /**
+     * Construct a exmax.OnlineMaximization by passing in the initial components, for example from a model
+     * created by {@link ModelFactory#createModel(SampleStore, int)} on the first batch of samples.
+     *
+     * @param components the initial components
+     */
+    public OnlineMaximization(List<Component> components) {
+        int componentSize = components.size();
+        this.weights = new double[componentSize];
+        this.means = new double[componentSize];
+        this.variances = new double[componentSize];
+        this.taus = new double[componentSize];
+
+        for (int k = 0; k < componentSize; k++) {
+            Component component = components.get(k);
+            weights[k] = component.getTau();
+            means[k] = component.getMu();
+            variances[k] = component.getSigma() * component.getSigma();
+            taus[k] = component.getTau();
+        }
+
+        this.batches = 0;
+        this.sampleCount = 0;
+        this.lastBatch = new BasicSampleStore(new double[0]);
+    }
+
+    /**
+     * Get {@see #stepSizeDecay}.
+     * @return {@link #stepSizeDecay}.
+     */
+    public synchronized double getStepSizeDecay() {
+        return stepSizeDecay;
+    }
+
+    /**
+     * Set {@see #stepSizeDecay}.
+     * @param stepSizeDecay {@link #stepSizeDecay}, greater than 0 and at most 1
+     */
+    public synchronized void setStepSizeDecay(double stepSizeDecay) {
+        if (!(stepSizeDecay > 0 && stepSizeDecay <= 1)) {
+            throw new IllegalArgumentException("Step size decay must be in (0, 1], but was " + stepSizeDecay);
+        }
+
+        this.stepSizeDecay = stepSizeDecay;
+    }
+
+    /**
+     * Get {@see #stepSizeOffset}.
+     * @return {@link #stepSizeOffset}.
+     */
+    public synchronized double getStepSizeOffset() {
+        return stepSizeOffset;
+    }
+
+    /**
+     * Set {@see #stepSizeOffset}.
+     * @param stepSizeOffset {@link #stepSizeOffset}, greater than or equal to 0
+     */
+    public synchronized void setStepSizeOffset(double stepSizeOffset) {
+        if (!(stepSizeOffset >= 0)) {
+            throw new IllegalArgumentException("Step size offset must be at least 0, but was " + stepSizeOffset);
+        }
+
+        this.stepSizeOffset = stepSizeOffset;
+    }
+
+    /**
+     * Get {@see #batchSize}.
+     * @return {@link #batchSize}.
+     */
+    public synchronized int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Set {@see #batchSize}.
+     * @param batchSize {@link #batchSize}, greater than or equal to 1
+     */
+    public synchronized void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1, but was " + batchSize);
+        }
+
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Gets the number of batches consumed so far.
+     *
+     * @return the number of batches
+     */
+    public synchronized long getBatches() {
+        return batches;
+    }
+
+    /**
+     * Gets the number of samples consumed so far.
+     *
+     * @return the number of samples
+     */
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Run one step of expectation maximization on a batch of samples, moving the running statistics towards
+     * the statistics of the batch.
+     *
+     * @param batch the batch of samples
+     */
+    public synchronized void update(SampleStore batch) {
+
+        if (batch.size() == 0) {
+            return;
+        }
+
+        SufficientStatistics statistics = ModelFactory.computeSufficientStatistics(getComponents(), batch);
+        batches++;
+        sampleCount += batch.size();
+        lastBatch = batch;
+
+        double step = Math.pow(batches + stepSizeOffset, -stepSizeDecay);
+        for (int k = 0; k < weights.length; k++) {
+
+            // Skip components that the batch didn't contribute to, rather than pulling them towards nothing.
+            double batchWeight = statistics.getWeight(k) / statistics.getSampleWeight();
+            if (!(batchWeight > 0)) {
+                weights[k] *= 1 - step;
+                continue;
+            }
+
+            // Blend the weights, then the means and variances as if pooling two weighted sets of samples.
+            double priorWeight = (1 - step) * weights[k];
+            double nextWeight = step * batchWeight;
+            double weight = priorWeight + nextWeight;
+
+            double batchMean = statistics.getMean(k);
+            double mean = (priorWeight * means[k] + nextWeight * batchMean) / weight;
+            double priorDistance = means[k] - mean;
+            double batchDistance = batchMean - mean;
+
+            variances[k] = (priorWeight * (variances[k] + priorDistance * priorDistance) +
+                    nextWeight * (statistics.getVariance(k) + batchDistance * batchDistance)) / weight;
+            means[k] = mean;
+            weights[k] = weight;
+        }
+    }
+
+    /**
+     * Consume every sample from an iterator, running one step of expectation maximization for every
+     * {@link #batchSize} samples and once more for the remainder. Primitive iterators are read without boxing.
+     *
+     * @param samples the iterator of samples
+     */
+    public void consume(Iterator<Double> samples) {
+
+        PrimitiveIterator.OfDouble primitiveSamples = samples instanceof PrimitiveIterator.OfDouble ?
+                (PrimitiveIterator.OfDouble) samples : null;
+
+        int size = getBatchSize();
+        double[] batch = new double[size];
+        int i = 0;
+
+        while (samples.hasNext()) {
+            batch[i++] = primitiveSamples != null ? primitiveSamples.nextDouble() : samples.next();
+            if (i == size) {
+
+                // Hand the full batch over and start a new one, since the last batch is kept for snapshots.
+                update(new BasicSampleStore(batch));
+                batch = new double[size];
+                i = 0;
+            }
+        }
+
+        if (i > 0) {
+            update(new BasicSampleStore(batch, 0, i));
+        }
+    }
+
+    /**
+     * Gets the current components, derived from the running statistics.
+     *
+     * @return the current components
+     */
+    public synchronized List<Component> getComponents() {
+
+        List<Component> components = new ArrayList<Component>();
+        for (int k = 0; k < weights.length; k++) {
+
+            // Floor sigma at 1 the same way as the batch maximization step.
+            double sigma = Math.max(Math.sqrt(variances[k]), 1.0f);
+            components.add(new BasicComponent(means[k], sigma, taus[k]));
+        }
+
+        return components;
+    }
+
+    /**
+     * Gets a snapshot of the current model. The snapshot holds the most recent batch of samples, so its log
+     * likelihood and BIC describe how well the current components fit recent data.
+     *
+     * @return a model with the current components and the most recent batch of samples
+     */
+    public synchronized Model getModel() {
+        return new BasicModel(getComponents(), lastBatch);
+    }
+}
@@ -0,0 +1,82 @@
+package exmax;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * exmax.QuantileInitializer sorts a random subsample and splits it into as many equally sized groups as there
+ * are components. Each component starts at the median of its group, with the spread of its group as sigma, so
+ * the components start dense where the samples are dense.
+ */
+public class QuantileInitializer implements Initializer {
+
+    /**
+     * The default maximum number of samples in the subsample.
+     */
+    public static final int DEFAULT_SUBSAMPLE_SIZE = 10000;
+
+    /**
+     * The maximum number of samples in the subsample.
+     */
+    private final int subsampleSize;
+
+    /**
+     * Construct a exmax.QuantileInitializer with the default subsample size.
+     */
+    public QuantileInitializer() {
+        this(DEFAULT_SUBSAMPLE_SIZE);
+    }
+
+    /**
+     * Construct a exmax.QuantileInitializer by passing in the maximum number of samples in the subsample.
+     *
+     * @param subsampleSize the maximum number of samples in the subsample, greater than or equal to 1
+     */
+    public QuantileInitializer(int subsampleSize) {
+        if (subsampleSize < 1) {
+            throw new IllegalArgumentException("Subsample size must be at least 1, but was " + subsampleSize);
+        }
+
+        this.subsampleSize = subsampleSize;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public Initialization initialize(SampleStore samples, int componentSize, Random rand) {
+
+        long start = System.nanoTime();
+        double[] subsample = Subsamples.draw(samples, subsampleSize, rand);
+        if (subsample.length == 0) {
+            throw new IllegalArgumentException("Can't initialize " + componentSize + " components without samples");
+        }
+
+        Arrays.sort(subsample);
+
+        List<Component> components = new ArrayList<Component>();
+        for (int k = 0; k < componentSize; k++) {
+            int from = (int) ((long) k * subsample.length / componentSize);
+            int to = Math.max((int) ((long) (k + 1) * subsample.length / componentSize), from + 1);
+            to = Math.min(to, subsample.length);
+
+            // Start at the median of the group, with the spread of the group floored at 1 like maximization.
+            double mu = subsample[Math.min((from + to) / 2, subsample.length - 1)];
+            double sigma = Math.max(Subsamples.standardDeviation(subsample, from, to), 1f);
+            components.add(new BasicComponent(mu, sigma, 1f / componentSize));
+        }
+
+        long sampleEvaluations = subsample.length + (long) (subsample.length * Math.log(subsample.length + 1));
+        return new Initialization(getName(), components, sampleEvaluations, System.nanoTime() - start);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public String getName() {
+        return "quantile";
+    }
+}
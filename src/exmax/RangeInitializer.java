@@ -0,0 +1,61 @@
+package exmax;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * exmax.RangeInitializer spaces the initial components evenly between the smallest and largest sample, with a
+ * small random jitter, and gives them all the same sigma and tau. It reads every sample once.
+ */
+public class RangeInitializer implements Initializer {
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public Initialization initialize(SampleStore samples, int componentSize, Random rand) {
+
+        if (samples.size() == 0) {
+            throw new IllegalArgumentException("Can't initialize " + componentSize + " components without samples");
+        }
+
+        long start = System.nanoTime();
+
+        // Find the sample max & min.
+        double min = Double.MAX_VALUE;
+        double max = Double.MAX_VALUE * -1;
+        for (int i = 0; i < samples.size(); i++) {
+            double sample = samples.get(i);
+            min = Math.min(sample, min);
+            max = Math.max(sample, max);
+        }
+
+        // Initialize the requested number of components.
+        List<Component> components = new ArrayList<Component>();
+        for (int i = 0; i < componentSize; i++) {
+
+            // Add a small amount of random to the mu of each component to avoid duplicates or mirror values.
+            double mu = (rand.nextDouble() % 1) + min + (i + 1) * (max - min) / (componentSize + 1);
+
+            // Initialize sigma to a width that roughly covers the sample set.
+            double sigma = Math.max((max - min) / (2 * (componentSize + 1)), 1f);
+
+            // Initialize tau to be even for each component. This won't be the case for more complex models.
+            double tau = 1f / componentSize;
+
+            Component component = new BasicComponent(mu, sigma, tau);
+            components.add(component);
+        }
+
+        return new Initialization(getName(), components, samples.size(), System.nanoTime() - start);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public String getName() {
+        return "range";
+    }
+}
@@ -0,0 +1,415 @@
+package exmax;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * exmax.SampleFile reads and writes the binary sample format. A file starts with a {@link #HEADER_SIZE} byte
+ * header holding the {@link #MAGIC} number, the format {@link #VERSION} and the number of samples, followed by
+ * the samples as little endian doubles. The header keeps the samples 8 byte aligned so they can be mapped.
+ */
+public abstract class SampleFile {
+
+    /**
+     * The magic number at the start of every binary sample file, which reads "EXMX" when written little endian.
+     */
+    public static final int MAGIC = 0x584d5845;
+
+    /**
+     * The version of the format written by this class.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The number of bytes in the header.
+     */
+    public static final int HEADER_SIZE = 16;
+
+    /**
+     * The number of samples buffered at a time while writing.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The number of bytes of text read at a time while converting.
+     */
+    private static final int TEXT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Check whether a file is a binary sample file by reading its magic number.
+     *
+     * @param filePath the path of the file
+     * @return true if the file starts with {@link #MAGIC}
+     * @throws IOException
+     */
+    public static boolean isSampleFile(String filePath) throws IOException {
+
+        FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) { }
+
+            header.flip();
+            return header.remaining() == 4 && header.getInt() == MAGIC;
+
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Map a binary sample file into memory, returning a store that reads the samples directly from the mapping.
+     * Files with more samples than an int can index are returned as a exmax.OffHeapSampleStore. The mapping stays
+     * valid after the file is closed, until the store is garbage collected.
+     *
+     * @param filePath the path of the file
+     * @return a store of the samples in the file
+     * @throws IOException if the file can't be read or isn't a valid binary sample file
+     */
+    public static SampleStore map(String filePath) throws IOException {
+
+        FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+        try {
+            long sampleSize = readHeader(channel, filePath);
+            if (sampleSize > (channel.size() - HEADER_SIZE) / 8) {
+                throw new IOException(filePath + " is truncated, expected " + sampleSize + " samples");
+            }
+
+            // Map the samples in segments, since a single mapping is limited to 2 GB.
+            int segmentSize = MappedSampleStore.SEGMENT_SIZE;
+            int segmentCount = (int) ((sampleSize + segmentSize - 1) / segmentSize);
+            DoubleBuffer[] segments = new DoubleBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                long first = (long) i * segmentSize;
+                long count = Math.min(segmentSize, sampleSize - first);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * 8, count * 8)
+                        .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            }
+
+            if (sampleSize > Integer.MAX_VALUE) {
+                return new OffHeapSampleStore(segments, MappedSampleStore.SEGMENT_SHIFT, sampleSize);
+            }
+
+            return new MappedSampleStore(segments, 0, (int) sampleSize);
+
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Write a store of samples to a binary sample file.
+     *
+     * @param filePath the path of the file
+     * @param samples the store of samples
+     * @throws IOException
+     */
+    public static void write(String filePath, SampleStore samples) throws IOException {
+
+        Writer writer = new Writer(filePath);
+        try {
+            double[] buffer = new double[BUFFER_SIZE];
+            for (int i = 0; i < samples.size(); i += BUFFER_SIZE) {
+                int count = Math.min(BUFFER_SIZE, samples.size() - i);
+                samples.copyTo(i, buffer, 0, count);
+                for (int j = 0; j < count; j++) {
+                    writer.write(buffer[j]);
+                }
+            }
+
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Convert a text file of whitespace delimited samples to a binary sample file, streaming the samples so
+     * that the text file doesn't need to fit in memory. Tokens are parsed the same way as by
+     * exmax.TextSampleLoader, and tokens that aren't numbers are counted and reported by their byte offset.
+     *
+     * @param textFilePath the path of the text file
+     * @param filePath the path of the binary sample file
+     * @return the number of samples written and a report of any malformed tokens
+     * @throws IOException
+     */
+    public static Conversion convert(String textFilePath, String filePath) throws IOException {
+
+        FileChannel channel = FileChannel.open(Paths.get(textFilePath), StandardOpenOption.READ);
+        Writer writer = new Writer(filePath);
+        try {
+            ByteBuffer bytes = ByteBuffer.allocate(TEXT_BUFFER_SIZE);
+            long position = 0;
+            long malformedCount = 0;
+            long[] malformedOffsets = new long[TextSampleLoader.MAX_REPORTED_OFFSETS];
+            int reported = 0;
+            boolean skipping = false;
+            boolean end = false;
+            while (!end) {
+                end = channel.read(bytes) < 0;
+                int length = bytes.position();
+
+                // Skip the rest of a token that was too long for the buffer.
+                int i = 0;
+                while (skipping && i < length && !TextSampleLoader.isWhitespace(bytes.get(i))) {
+                    i++;
+                }
+
+                skipping &= i == length;
+                int consumed = i;
+                while (true) {
+
+                    // Skip whitespace, then find the end of the token.
+                    while (i < length && TextSampleLoader.isWhitespace(bytes.get(i))) {
+                        i++;
+                    }
+
+                    consumed = i;
+                    int tokenStart = i;
+                    while (i < length && !TextSampleLoader.isWhitespace(bytes.get(i))) {
+                        i++;
+                    }
+
+                    if (tokenStart == i) {
+                        break;
+                    }
+
+                    // A token that reaches the end of the buffer may continue in the next read.
+                    boolean malformed = false;
+                    if (i == length && !end) {
+                        if (tokenStart > 0 || length < bytes.capacity()) {
+                            break;
+                        }
+
+                        malformed = true;
+                        skipping = true;
+                    }
+
+                    double sample = malformed ? Double.NaN : TextSampleLoader.parseDouble(bytes, tokenStart, i);
+                    if (malformed || Double.isNaN(sample) && !TextSampleLoader.isNaNToken(bytes, tokenStart, i)) {
+                        if (reported < malformedOffsets.length) {
+                            malformedOffsets[reported++] = position + tokenStart;
+                        }
+
+                        malformedCount++;
+                    } else {
+                        writer.write(sample);
+                    }
+
+                    consumed = i;
+                }
+
+                // Keep the bytes of an unfinished token for the next read.
+                bytes.flip();
+                bytes.position(consumed);
+                bytes.compact();
+                position += consumed;
+            }
+
+            return new Conversion(writer.getSampleSize(), malformedCount, Arrays.copyOf(malformedOffsets, reported));
+
+        } finally {
+            writer.close();
+            channel.close();
+        }
+    }
+
+    /**
+     * Read and validate the header of a binary sample file.
+     *
+     * @param channel the channel of the file, positioned at the start
+     * @param filePath the path of the file, for error messages
+     * @return the number of samples in the file
+     * @throws IOException if the header isn't valid
+     */
+    private static long readHeader(FileChannel channel, String filePath) throws IOException {
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining() && channel.read(header) >= 0) { }
+
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+            throw new IOException(filePath + " is not a binary sample file");
+        }
+
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException(filePath + " has unsupported version " + version);
+        }
+
+        long sampleSize = header.getLong();
+        if (sampleSize < 0) {
+            throw new IOException(filePath + " has a negative sample count");
+        }
+
+        return sampleSize;
+    }
+
+    /**
+     * exmax.SampleFile.Conversion holds the number of samples written by a conversion and a report of the tokens
+     * that couldn't be parsed.
+     */
+    public static class Conversion {
+
+        /**
+         * The number of samples written to the binary sample file.
+         */
+        private final long sampleSize;
+
+        /**
+         * The number of tokens that couldn't be parsed.
+         */
+        private final long malformedCount;
+
+        /**
+         * The file offsets of the first tokens that couldn't be parsed.
+         */
+        private final long[] malformedOffsets;
+
+        /**
+         * Construct a exmax.SampleFile.Conversion.
+         *
+         * @param sampleSize the number of samples written to the binary sample file
+         * @param malformedCount the number of tokens that couldn't be parsed
+         * @param malformedOffsets the file offsets of the first tokens that couldn't be parsed
+         */
+        public Conversion(long sampleSize, long malformedCount, long[] malformedOffsets) {
+            this.sampleSize = sampleSize;
+            this.malformedCount = malformedCount;
+            this.malformedOffsets = malformedOffsets;
+        }
+
+        /**
+         * Gets the number of samples written to the binary sample file.
+         *
+         * @return the number of samples
+         */
+        public long getSampleSize() {
+            return sampleSize;
+        }
+
+        /**
+         * Gets the number of tokens that couldn't be parsed.
+         *
+         * @return the number of malformed tokens
+         */
+        public long getMalformedCount() {
+            return malformedCount;
+        }
+
+        /**
+         * Gets the file offsets of the first tokens that couldn't be parsed, up to
+         * {@link TextSampleLoader#MAX_REPORTED_OFFSETS}.
+         *
+         * @return the byte offsets of malformed tokens
+         */
+        public long[] getMalformedOffsets() {
+            return malformedOffsets;
+        }
+    }
+
+    /**
+     * exmax.SampleFile.Writer streams samples to a binary sample file, writing the sample count into the header
+     * when it is closed.
+     */
+    public static class Writer implements Closeable {
+
+        /**
+         * The channel of the file being written.
+         */
+        private final FileChannel channel;
+
+        /**
+         * The buffer of samples waiting to be written.
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * The number of samples written so far.
+         */
+        private long sampleSize;
+
+        /**
+         * Construct a exmax.SampleFile.Writer, creating or truncating the file.
+         *
+         * @param filePath the path of the file
+         * @throws IOException
+         */
+        public Writer(String filePath) throws IOException {
+            Path path = Paths.get(filePath);
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE * 8).order(ByteOrder.LITTLE_ENDIAN);
+            this.sampleSize = 0;
+
+            // Leave room for the header, which is written once the sample count is known.
+            channel.position(HEADER_SIZE);
+        }
+
+        /**
+         * Write a sample.
+         *
+         * @param sample the sample value
+         * @throws IOException
+         */
+        public void write(double sample) throws IOException {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+
+            buffer.putDouble(sample);
+            sampleSize++;
+        }
+
+        /**
+         * Gets the number of samples written so far.
+         *
+         * @return the number of samples
+         */
+        public long getSampleSize() {
+            return sampleSize;
+        }
+
+        /**
+         * Write the buffered samples to the file.
+         *
+         * @throws IOException
+         */
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            buffer.clear();
+        }
+
+        /**
+         * Write the remaining samples and the header, and close the file.
+         *
+         * @throws IOException
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).putLong(sampleSize);
+                header.flip();
+                while (header.hasRemaining()) {
+                    channel.write(header, HEADER_SIZE - header.remaining());
+                }
+
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package exmax;
+
+import java.util.List;
+
+/**
+ * exmax.SampleStore represents an ordered, read only collection of samples that can be accessed as primitive
+ * doubles without boxing each value.
+ */
+public interface SampleStore {
+
+    /**
+     * Gets the number of samples in the store.
+     *
+     * @return the number of samples in the store
+     */
+    int size();
+
+    /**
+     * Gets the sample at the specified index.
+     *
+     * @param index the index of the sample, from 0 to {@link #size()} - 1
+     * @return the sample value
+     */
+    double get(int index);
+
+    /**
+     * Gets a view of a contiguous range of samples in the store, without copying the samples.
+     *
+     * @param fromIndex the index of the first sample in the range, inclusive
+     * @param toIndex the index of the last sample in the range, exclusive
+     * @return a sample store that reads through to the specified range of this store
+     */
+    SampleStore range(int fromIndex, int toIndex);
+
+    /**
+     * Copies a contiguous range of samples into an array.
+     *
+     * @param index the index of the first sample to copy
+     * @param destination the array to copy the samples into
+     * @param destinationIndex the index in the destination array to copy the first sample to
+     * @param length the number of samples to copy
+     */
+    void copyTo(int index, double[] destination, int destinationIndex, int length);
+
+    /**
+     * Gets a copy of every sample in the store as an array.
+     *
+     * @return an array containing every sample in the store
+     */
+    double[] toArray();
+
+    /**
+     * Gets a list view of the samples in the store, for compatibility with code that expects boxed samples.
+     *
+     * @return an unmodifiable list that reads through to the store
+     */
+    List<Double> asList();
+}
@@ -0,0 +1,50 @@
+package exmax;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * exmax.SampleStoreList adapts a exmax.SampleStore to an unmodifiable list of boxed samples. Values are boxed
+ * as they are read, so the list doesn't hold any samples of its own.
+ */
+public class SampleStoreList extends AbstractList<Double> implements RandomAccess {
+
+    /**
+     * The store that the list reads through to.
+     */
+    private final SampleStore sampleStore;
+
+    /**
+     * Construct a exmax.SampleStoreList by passing in the store to read through to.
+     *
+     * @param sampleStore the store of samples
+     */
+    public SampleStoreList(SampleStore sampleStore) {
+        this.sampleStore = sampleStore;
+    }
+
+    /**
+     * Gets the store that the list reads through to.
+     *
+     * @return the store of samples
+     */
+    public SampleStore getSampleStore() {
+        return sampleStore;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public Double get(int index) {
+        return sampleStore.get(index);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public int size() {
+        return sampleStore.size();
+    }
+}
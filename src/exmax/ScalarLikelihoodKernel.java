@@ -0,0 +1,29 @@
+package exmax;
+
+/**
+ * exmax.ScalarLikelihoodKernel provides a exmax.LikelihoodKernel that evaluates one sample at a time, which is
+ * used when the vector API isn't available.
+ */
+public class ScalarLikelihoodKernel implements LikelihoodKernel {
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void evaluateLog(double[] samples, int offset, int length, double mu, double exponentScale,
+                            double logNormalizer, double[] logLikelihoods) {
+
+        for (int i = 0; i < length; i++) {
+            double d = samples[offset + i] - mu;
+            logLikelihoods[i] = logNormalizer - d * d * exponentScale;
+        }
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
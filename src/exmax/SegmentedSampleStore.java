@@ -0,0 +1,49 @@
+package exmax;
+
+/**
+ * exmax.SegmentedSampleStore represents a exmax.SampleStore that may hold more samples than an int can index,
+ * split into segments that each can. The expectation step runs over one segment at a time, so a store of any
+ * size can be maximized. The int indexed methods of exmax.SampleStore only work while the store holds no more
+ * than {@link Integer#MAX_VALUE} samples, and throw IllegalStateException otherwise.
+ */
+public interface SegmentedSampleStore extends SampleStore {
+
+    /**
+     * Gets the number of samples in the store, however many there are.
+     *
+     * @return the number of samples
+     */
+    long getLongSize();
+
+    /**
+     * Gets a sample by a long index.
+     *
+     * @param index the index of the sample, from 0 to {@link #getLongSize()} exclusive
+     * @return the sample value
+     */
+    double getSample(long index);
+
+    /**
+     * Gets the number of segments in the store.
+     *
+     * @return the number of segments
+     */
+    int getSegmentCount();
+
+    /**
+     * Gets a view of the samples in a segment, which reads them in place without copying them.
+     *
+     * @param segment the index of the segment
+     * @return a store of the samples in the segment
+     */
+    SampleStore getSegment(int segment);
+
+    /**
+     * Gets a view of a contiguous range of samples by long indexes, without copying the samples.
+     *
+     * @param fromIndex the index of the first sample in the range, inclusive
+     * @param toIndex the index of the last sample in the range, exclusive
+     * @return a store that reads through to the specified range of this store
+     */
+    SegmentedSampleStore getRange(long fromIndex, long toIndex);
+}
@@ -0,0 +1,164 @@
+package exmax;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * exmax.ShardWorker holds one shard of the samples of a sharded fit and runs the expectation step over it for a
+ * coordinator, which connects through a exmax.ShardedSampleStore. Each request from the coordinator is answered
+ * before the next one is read, and the worker stops when the coordinator closes the connection.
+ */
+public class ShardWorker {
+
+    /**
+     * The magic number the worker sends when a coordinator connects, which reads "EXSH" as bytes.
+     */
+    public static final int MAGIC = 0x45585348;
+
+    /**
+     * The version of the protocol spoken by this class.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * The request to close the connection.
+     */
+    public static final byte CLOSE = 0;
+
+    /**
+     * The request to run the expectation step for a list of components, answered with the statistics.
+     */
+    public static final byte STATISTICS = 1;
+
+    /**
+     * The request to read a range of samples, answered with the samples.
+     */
+    public static final byte SAMPLES = 2;
+
+    /**
+     * The request to draw a random subsample of the shard, answered with the subsample.
+     */
+    public static final byte DRAW = 3;
+
+    /**
+     * The maximum number of samples that can be requested at a time.
+     */
+    public static final int MAX_SAMPLES = 1 << 20;
+
+    /**
+     * The shard of samples.
+     */
+    private final SampleStore samples;
+
+    /**
+     * Construct a exmax.ShardWorker by passing in its shard of samples.
+     *
+     * @param samples the store of samples in the shard
+     */
+    public ShardWorker(SampleStore samples) {
+        this.samples = samples;
+    }
+
+    /**
+     * Listen on a port of the loopback address and serve the first coordinator that connects, until it closes
+     * the connection.
+     *
+     * @param port the port to listen on, or 0 for any free port
+     * @throws IOException
+     */
+    public void serve(int port) throws IOException {
+
+        ServerSocket server = new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+        try {
+            System.out.println("Serving " + samples.size() + " samples on port " + server.getLocalPort());
+            Socket socket = server.accept();
+            try {
+                serve(socket);
+            } finally {
+                socket.close();
+            }
+
+        } finally {
+            server.close();
+        }
+    }
+
+    /**
+     * Serve a coordinator over a connected socket, until it closes the connection.
+     *
+     * @param socket the connected socket
+     * @throws IOException
+     */
+    public void serve(Socket socket) throws IOException {
+
+        socket.setTcpNoDelay(true);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(samples.size());
+        out.flush();
+
+        double[] buffer = null;
+        while (true) {
+            int request = in.read();
+            if (request < 0 || request == CLOSE) {
+                return;
+            }
+
+            if (request == STATISTICS) {
+
+                // Read the components and run the expectation step over the shard.
+                int componentSize = in.readInt();
+                List<Component> components = new ArrayList<Component>();
+                for (int k = 0; k < componentSize; k++) {
+                    components.add(new BasicComponent(in.readDouble(), in.readDouble(), in.readDouble()));
+                }
+
+                ModelFactory.computeSufficientStatistics(components, samples).write(out);
+
+            } else if (request == SAMPLES) {
+
+                int index = in.readInt();
+                int length = in.readInt();
+                if (index < 0 || length < 0 || length > MAX_SAMPLES || index > samples.size() - length) {
+                    throw new IOException("Requested " + length + " samples from " + index + " of " +
+                            samples.size());
+                }
+
+                if (buffer == null || buffer.length < length) {
+                    buffer = new double[length];
+                }
+
+                samples.copyTo(index, buffer, 0, length);
+                for (int i = 0; i < length; i++) {
+                    out.writeDouble(buffer[i]);
+                }
+
+            } else if (request == DRAW) {
+
+                int subsampleSize = in.readInt();
+                long seed = in.readLong();
+                if (subsampleSize < 0 || subsampleSize > MAX_SAMPLES) {
+                    throw new IOException("Requested a subsample of " + subsampleSize + " samples");
+                }
+
+                double[] subsample = Subsamples.draw(samples, subsampleSize, new Random(seed));
+                out.writeInt(subsample.length);
+                for (double sample : subsample) {
+                    out.writeDouble(sample);
+                }
+
+            } else {
+                throw new IOException("Unknown request " + request);
+            }
+
+            out.flush();
+        }
+    }
+}
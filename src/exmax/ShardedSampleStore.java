@@ -0,0 +1,310 @@
+package exmax;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * exmax.ShardedSampleStore represents samples split into shards held by exmax.ShardWorker processes. The
+ * expectation step is sent to every worker, which returns the statistics of its shard, and the statistics are
+ * added together in shard order, so {@link ModelFactory#maximize(Model)} runs the maximization step and the
+ * convergence check here without the samples ever being copied to this process. Reading samples directly
+ * fetches them from the workers, which is only meant for initializers and other subsampling.
+ */
+public class ShardedSampleStore implements SampleStore, Closeable {
+
+    /**
+     * The connection to each worker.
+     */
+    private final List<Shard> shards;
+
+    /**
+     * The index of the first sample of each shard, followed by the total number of samples.
+     */
+    private final int[] starts;
+
+    /**
+     * Construct a exmax.ShardedSampleStore by connecting to workers listening on ports of the loopback address.
+     *
+     * @param ports the port of each worker, in shard order
+     * @throws IOException if a worker can't be reached or doesn't speak the same protocol
+     */
+    public ShardedSampleStore(int[] ports) throws IOException {
+
+        this.shards = new ArrayList<Shard>();
+        this.starts = new int[ports.length + 1];
+        try {
+            for (int i = 0; i < ports.length; i++) {
+                Shard shard = new Shard(new Socket(InetAddress.getLoopbackAddress(), ports[i]));
+                shards.add(shard);
+                if ((long) starts[i] + shard.size > Integer.MAX_VALUE) {
+                    throw new IOException("Shards hold more samples than a store can hold");
+                }
+
+                starts[i + 1] = starts[i] + shard.size;
+            }
+
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Run the expectation step on every worker and add their statistics together.
+     *
+     * @param components the components in the model
+     * @return the sufficient statistics of all samples
+     * @throws UncheckedIOException if a worker fails
+     */
+    public synchronized SufficientStatistics computeSufficientStatistics(List<Component> components) {
+
+        SufficientStatistics statistics = new SufficientStatistics(components);
+        try {
+
+            // Send every request before reading any response, so the workers compute at the same time.
+            for (Shard shard : shards) {
+                shard.out.writeByte(ShardWorker.STATISTICS);
+                shard.out.writeInt(components.size());
+                for (Component component : components) {
+                    shard.out.writeDouble(component.getMu());
+                    shard.out.writeDouble(component.getSigma());
+                    shard.out.writeDouble(component.getTau());
+                }
+
+                shard.out.flush();
+            }
+
+            for (Shard shard : shards) {
+                statistics.add(SufficientStatistics.read(shard.in, components.size()));
+            }
+
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Shard worker failed during the expectation step", ex);
+        }
+
+        return statistics;
+    }
+
+    /**
+     * Draw a random subsample, with each worker drawing from its own shard in proportion to its size. If the
+     * store isn't larger than the subsample, every sample is fetched in order instead.
+     *
+     * @param subsampleSize the maximum number of samples in the subsample
+     * @param rand the source of seeds for the workers
+     * @return the subsample
+     * @throws UncheckedIOException if a worker fails
+     */
+    public synchronized double[] draw(int subsampleSize, Random rand) {
+
+        if (size() <= subsampleSize) {
+            return toArray();
+        }
+
+        // Split the subsample between shards by size, giving the largest shard what rounding leaves over.
+        int[] counts = new int[shards.size()];
+        int largest = 0;
+        int total = 0;
+        for (int s = 0; s < shards.size(); s++) {
+            counts[s] = (int) ((long) subsampleSize * (starts[s + 1] - starts[s]) / size());
+            total += counts[s];
+            if (starts[s + 1] - starts[s] > starts[largest + 1] - starts[largest]) {
+                largest = s;
+            }
+        }
+
+        counts[largest] += subsampleSize - total;
+
+        double[] subsample = new double[subsampleSize];
+        try {
+            int drawn = 0;
+            for (int s = 0; s < shards.size(); s++) {
+                Shard shard = shards.get(s);
+                int end = drawn + counts[s];
+                while (drawn < end) {
+                    shard.out.writeByte(ShardWorker.DRAW);
+                    shard.out.writeInt(Math.min(end - drawn, ShardWorker.MAX_SAMPLES));
+                    shard.out.writeLong(rand.nextLong());
+                    shard.out.flush();
+                    int length = shard.in.readInt();
+                    if (length <= 0 || length > end - drawn) {
+                        throw new IOException("Shard " + s + " drew " + length + " samples, expected " +
+                                (end - drawn));
+                    }
+
+                    for (int i = 0; i < length; i++) {
+                        subsample[drawn++] = shard.in.readDouble();
+                    }
+                }
+            }
+
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Shard worker failed while drawing samples", ex);
+        }
+
+        return subsample;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public int size() {
+        return starts[shards.size()];
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public double get(int index) {
+        double[] sample = new double[1];
+        copyTo(index, sample, 0, 1);
+        return sample[0];
+    }
+
+    /**
+     * Copy a range of the samples into a new in memory store, fetching them from the workers.
+     *
+     * @param fromIndex the index of the first sample, inclusive
+     * @param toIndex the index of the last sample, exclusive
+     * @return a exmax.BasicSampleStore of the range
+     */
+    @Override
+    public SampleStore range(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Range " + fromIndex + " to " + toIndex + " of " + size());
+        }
+
+        double[] samples = new double[toIndex - fromIndex];
+        copyTo(fromIndex, samples, 0, samples.length);
+        return new BasicSampleStore(samples);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public synchronized void copyTo(int index, double[] destination, int destinationIndex, int length) {
+        if (index < 0 || length < 0 || index > size() - length) {
+            throw new IndexOutOfBoundsException("Range " + index + " to " + (index + length) + " of " + size());
+        }
+
+        try {
+            int s = 0;
+            while (length > 0) {
+
+                // Find the shard holding the next sample, and fetch as much of the range as it holds.
+                while (starts[s + 1] <= index) {
+                    s++;
+                }
+
+                Shard shard = shards.get(s);
+                int count = Math.min(Math.min(length, starts[s + 1] - index), ShardWorker.MAX_SAMPLES);
+                shard.out.writeByte(ShardWorker.SAMPLES);
+                shard.out.writeInt(index - starts[s]);
+                shard.out.writeInt(count);
+                shard.out.flush();
+                for (int i = 0; i < count; i++) {
+                    destination[destinationIndex + i] = shard.in.readDouble();
+                }
+
+                index += count;
+                destinationIndex += count;
+                length -= count;
+            }
+
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Shard worker failed while reading samples", ex);
+        }
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public double[] toArray() {
+        double[] samples = new double[size()];
+        copyTo(0, samples, 0, samples.length);
+        return samples;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public List<Double> asList() {
+        return new SampleStoreList(this);
+    }
+
+    /**
+     * Ask every worker to stop and close the connections.
+     *
+     * @throws IOException if a connection can't be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (Shard shard : shards) {
+            try {
+                shard.out.writeByte(ShardWorker.CLOSE);
+                shard.out.flush();
+            }
+
+            catch (IOException ex) { }
+
+            shard.socket.close();
+        }
+    }
+
+    /**
+     * exmax.ShardedSampleStore.Shard holds the connection to a single worker.
+     */
+    private static class Shard {
+
+        /**
+         * The socket connected to the worker.
+         */
+        private final Socket socket;
+
+        /**
+         * The stream of responses from the worker.
+         */
+        private final DataInputStream in;
+
+        /**
+         * The stream of requests to the worker.
+         */
+        private final DataOutputStream out;
+
+        /**
+         * The number of samples in the shard.
+         */
+        private final int size;
+
+        /**
+         * Construct a exmax.ShardedSampleStore.Shard by reading the handshake from a connected worker.
+         *
+         * @param socket the socket connected to the worker
+         * @throws IOException if the worker doesn't speak the same protocol
+         */
+        private Shard(Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            int magic = in.readInt();
+            int version = in.readInt();
+            if (magic != ShardWorker.MAGIC || version != ShardWorker.VERSION) {
+                socket.close();
+                throw new IOException("Port " + socket.getPort() + " is not a shard worker with version " +
+                        ShardWorker.VERSION);
+            }
+
+            this.size = in.readInt();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package exmax;
+
+/**
+ * exmax.SortedSampleStore represents a exmax.SampleStore whose samples are in ascending order, including every
+ * range of it. The expectation step uses the order to skip components that are too far from a block of samples
+ * to matter, see {@link ModelFactory#setTruncationTolerance(double)}.
+ */
+public interface SortedSampleStore extends SampleStore {
+}
@@ -0,0 +1,117 @@
+package exmax;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * exmax.Subsamples contains helpers for drawing and summarizing random subsamples of a store of samples.
+ */
+public abstract class Subsamples {
+
+    /**
+     * Draw a random subsample of a store of samples, with replacement. If the store isn't larger than the
+     * subsample, every sample is copied in order instead. Samples from a exmax.WeightedSampleStore are drawn in
+     * proportion to their weight.
+     *
+     * @param samples the store of samples
+     * @param subsampleSize the maximum number of samples in the subsample
+     * @param rand the source of random indexes
+     * @return the subsample
+     */
+    public static double[] draw(SampleStore samples, int subsampleSize, Random rand) {
+
+        if (samples instanceof WeightedSampleStore) {
+            return drawWeighted((WeightedSampleStore) samples, subsampleSize, rand);
+        }
+
+        // Let the workers of a sharded store draw from their own shards, rather than fetching one at a time.
+        if (samples instanceof ShardedSampleStore) {
+            return ((ShardedSampleStore) samples).draw(subsampleSize, rand);
+        }
+
+        // Draw from segmented stores by long index, since they may be too large to index with an int.
+        if (samples instanceof SegmentedSampleStore) {
+            SegmentedSampleStore segmentedSamples = (SegmentedSampleStore) samples;
+            if (segmentedSamples.getLongSize() <= subsampleSize) {
+                return samples.toArray();
+            }
+
+            double[] subsample = new double[subsampleSize];
+            for (int i = 0; i < subsampleSize; i++) {
+                subsample[i] = segmentedSamples.getSample(rand.nextLong(segmentedSamples.getLongSize()));
+            }
+
+            return subsample;
+        }
+
+        if (samples.size() <= subsampleSize) {
+            return samples.toArray();
+        }
+
+        double[] subsample = new double[subsampleSize];
+        for (int i = 0; i < subsampleSize; i++) {
+            subsample[i] = samples.get(rand.nextInt(samples.size()));
+        }
+
+        return subsample;
+    }
+
+    /**
+     * Draw a random subsample of a weighted store of samples, with replacement, in proportion to their weight.
+     *
+     * @param samples the weighted store of samples
+     * @param subsampleSize the number of samples in the subsample
+     * @param rand the source of random draws
+     * @return the subsample
+     */
+    private static double[] drawWeighted(WeightedSampleStore samples, int subsampleSize, Random rand) {
+
+        double[] cumulativeWeights = new double[samples.size()];
+        double total = 0;
+        for (int i = 0; i < samples.size(); i++) {
+            total += samples.getWeight(i);
+            cumulativeWeights[i] = total;
+        }
+
+        if (samples.size() == 0) {
+            return new double[0];
+        }
+
+        double[] subsample = new double[subsampleSize];
+        for (int i = 0; i < subsampleSize; i++) {
+            int index = Arrays.binarySearch(cumulativeWeights, rand.nextDouble() * total);
+            index = index >= 0 ? index : -index - 1;
+            subsample[i] = samples.get(Math.min(index, samples.size() - 1));
+        }
+
+        return subsample;
+    }
+
+    /**
+     * Gets the standard deviation of a range of an array.
+     *
+     * @param values the array
+     * @param from the index of the first value, inclusive
+     * @param to the index of the last value, exclusive
+     * @return the standard deviation, or 0 if the range is empty
+     */
+    public static double standardDeviation(double[] values, int from, int to) {
+
+        if (to <= from) {
+            return 0;
+        }
+
+        double mean = 0;
+        for (int i = from; i < to; i++) {
+            mean += values[i];
+        }
+
+        mean /= to - from;
+        double variance = 0;
+        for (int i = from; i < to; i++) {
+            variance += (values[i] - mean) * (values[i] - mean);
+        }
+
+        return Math.sqrt(variance / (to - from));
+    }
+}
@@ -0,0 +1,419 @@
+package exmax;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * exmax.SufficientStatistics holds the result of the expectation step of expectation maximization: for each
+ * component, the sums over all samples that the maximization step needs, plus the log likelihood of the model.
+ * Sums are centered on the mu of each component when the statistics were computed, which keeps the variance
+ * accurate when samples are far from zero.
+ */
+public class SufficientStatistics {
+
+    /**
+     * The number of samples evaluated at a time, small enough for the block and its likelihoods to stay in cache.
+     */
+    private static final int BLOCK_SIZE = 1024;
+
+    /**
+     * The mu value of each component that the sums are centered on.
+     */
+    private final double[] centers;
+
+    /**
+     * The sum of the relative likelihoods of all samples, for each component.
+     */
+    private final double[] weights;
+
+    /**
+     * The sum of the relative likelihood times the centered sample, for each component.
+     */
+    private final double[] weightedSums;
+
+    /**
+     * The sum of the relative likelihood times the square of the centered sample, for each component.
+     */
+    private final double[] weightedSquareSums;
+
+    /**
+     * The log likelihood of the model, given the samples.
+     */
+    private double logLikelihood;
+
+    /**
+     * The number of samples that contributed to the sums.
+     */
+    private long sampleSize;
+
+    /**
+     * The total weight of the samples that contributed to the sums, which is the same as the number of samples
+     * unless they came from a exmax.WeightedSampleStore.
+     */
+    private double sampleWeight;
+
+    /**
+     * The number of bytes allocated by the threads that computed the statistics, as measured by
+     * exmax.ExpectationTask, which is 0 for statistics read from another process.
+     */
+    private long allocatedBytes;
+
+    /**
+     * Construct an empty exmax.SufficientStatistics for the specified components.
+     *
+     * @param components the components that the statistics will be computed for
+     */
+    public SufficientStatistics(List<Component> components) {
+        this(components.size());
+        for (int k = 0; k < centers.length; k++) {
+            centers[k] = components.get(k).getMu();
+        }
+    }
+
+    /**
+     * Construct an empty exmax.SufficientStatistics for a number of components, with every center at zero.
+     *
+     * @param componentSize the number of components
+     */
+    private SufficientStatistics(int componentSize) {
+        this.centers = new double[componentSize];
+        this.weights = new double[componentSize];
+        this.weightedSums = new double[componentSize];
+        this.weightedSquareSums = new double[componentSize];
+        this.logLikelihood = 0;
+        this.sampleSize = 0;
+        this.sampleWeight = 0;
+        this.allocatedBytes = 0;
+    }
+
+    /**
+     * Read statistics written by {@link #write(DataOutput)}, for example by another process. The component count
+     * is checked before anything is allocated for it, since it comes from the writer.
+     *
+     * @param in the input to read from
+     * @param expectedComponentSize the number of components the statistics were requested for
+     * @return the statistics
+     * @throws IOException if the input can't be read or the statistics have a different number of components
+     */
+    public static SufficientStatistics read(DataInput in, int expectedComponentSize) throws IOException {
+
+        int componentSize = in.readInt();
+        if (componentSize != expectedComponentSize) {
+            throw new IOException("Statistics have " + componentSize + " components, expected " +
+                    expectedComponentSize);
+        }
+
+        SufficientStatistics statistics = new SufficientStatistics(componentSize);
+        for (int k = 0; k < componentSize; k++) {
+            statistics.centers[k] = in.readDouble();
+            statistics.weights[k] = in.readDouble();
+            statistics.weightedSums[k] = in.readDouble();
+            statistics.weightedSquareSums[k] = in.readDouble();
+        }
+
+        statistics.logLikelihood = in.readDouble();
+        statistics.sampleSize = in.readLong();
+        statistics.sampleWeight = in.readDouble();
+        return statistics;
+    }
+
+    /**
+     * Write the statistics exactly, so that they can be read back by {@link #read(DataInput, int)}.
+     *
+     * @param out the output to write to
+     * @throws IOException
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(centers.length);
+        for (int k = 0; k < centers.length; k++) {
+            out.writeDouble(centers[k]);
+            out.writeDouble(weights[k]);
+            out.writeDouble(weightedSums[k]);
+            out.writeDouble(weightedSquareSums[k]);
+        }
+
+        out.writeDouble(logLikelihood);
+        out.writeLong(sampleSize);
+        out.writeDouble(sampleWeight);
+    }
+
+    /**
+     * Find the index of the first sample that is not less than a value, in a store of sorted samples.
+     *
+     * @param samples the store of samples in ascending order
+     * @param value the value to search for
+     * @return the index of the first sample greater than or equal to the value, or the size if there is none
+     */
+    private static int search(SampleStore samples, double value) {
+        int low = 0;
+        int high = samples.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (samples.get(middle) < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Run the expectation step for a list of components over a store of samples, computing the relative
+     * likelihood of each sample for each component exactly once.
+     *
+     * @param components the components in the model
+     * @param samples the store of samples
+     * @return the sufficient statistics of the samples
+     */
+    public static SufficientStatistics compute(List<Component> components, SampleStore samples) {
+        SufficientStatistics statistics = new SufficientStatistics(components);
+        statistics.accumulate(components, samples);
+        return statistics;
+    }
+
+    /**
+     * Add the contribution of a store of samples to the statistics. Samples from a exmax.WeightedSampleStore
+     * count as many times as their weight.
+     *
+     * @param components the components in the model, in the same order the statistics were constructed with
+     * @param samples the store of samples
+     */
+    public void accumulate(List<Component> components, SampleStore samples) {
+
+        int componentSize = centers.length;
+        Component[] c = components.toArray(new Component[componentSize]);
+        double[] logTaus = new double[componentSize];
+        for (int k = 0; k < componentSize; k++) {
+            logTaus[k] = Math.log(c[k].getTau());
+        }
+
+        WeightedSampleStore weightedSamples = samples instanceof WeightedSampleStore ?
+                (WeightedSampleStore) samples : null;
+        double[] blockWeights = weightedSamples != null ? new double[BLOCK_SIZE] : null;
+
+        // When the samples are sorted, find the range of samples within the window of each component.
+        double tolerance = ModelFactory.getTruncationTolerance();
+        int[] windowStarts = null;
+        int[] windowEnds = null;
+        if (tolerance > 0 && samples instanceof SortedSampleStore) {
+            windowStarts = new int[componentSize];
+            windowEnds = new int[componentSize];
+            for (int k = 0; k < componentSize; k++) {
+                double radius = c[k].getWindowRadius(tolerance);
+                windowStarts[k] = search(samples, c[k].getMu() - radius);
+                windowEnds[k] = search(samples, Math.nextUp(c[k].getMu() + radius));
+            }
+        }
+
+        double[] block = new double[BLOCK_SIZE];
+        double[][] logLikelihoods = new double[componentSize][BLOCK_SIZE];
+        double[] scaled = new double[componentSize];
+        int[] active = new int[componentSize];
+        for (int start = 0; start < samples.size(); start += BLOCK_SIZE) {
+            int length = Math.min(BLOCK_SIZE, samples.size() - start);
+            samples.copyTo(start, block, 0, length);
+            if (weightedSamples != null) {
+                weightedSamples.copyWeightsTo(start, blockWeights, 0, length);
+            }
+
+            // Skip components whose window doesn't overlap the block, unless no window does.
+            int activeSize = 0;
+            for (int k = 0; k < componentSize; k++) {
+                if (windowStarts == null || (windowStarts[k] < start + length && windowEnds[k] > start)) {
+                    active[activeSize++] = k;
+                }
+            }
+
+            if (activeSize == 0) {
+                for (int k = 0; k < componentSize; k++) {
+                    active[activeSize++] = k;
+                }
+            }
+
+            // Evaluate each component once for the whole block, in log space so nothing underflows.
+            for (int j = 0; j < activeSize; j++) {
+                int k = active[j];
+                c[k].getSampleLogLikelihoods(block, 0, length, logLikelihoods[k]);
+            }
+
+            for (int i = 0; i < length; i++) {
+                double sample = block[i];
+                double w = blockWeights != null ? blockWeights[i] : 1;
+                sampleWeight += w;
+
+                // Weight each component by tau, and find the largest to factor out of the total.
+                double m = Double.NEGATIVE_INFINITY;
+                for (int j = 0; j < activeSize; j++) {
+                    int k = active[j];
+                    double l = logLikelihoods[k][i] + logTaus[k];
+                    logLikelihoods[k][i] = l;
+                    m = Math.max(m, l);
+                }
+
+                // Get the total across components used to normalize them, relative to the largest.
+                double t = 0;
+                for (int j = 0; j < activeSize; j++) {
+                    int k = active[j];
+                    scaled[k] = Math.exp(logLikelihoods[k][i] - m);
+                    t += scaled[k];
+                }
+
+                for (int j = 0; j < activeSize; j++) {
+                    int k = active[j];
+                    double r = scaled[k] / t * w;
+                    if (Double.isNaN(r) || r == 0) {
+                        continue;
+                    }
+
+                    double x = sample - centers[k];
+                    weights[k] += r;
+                    weightedSums[k] += r * x;
+                    weightedSquareSums[k] += r * x * x;
+                    logLikelihood += r * logLikelihoods[k][i];
+                }
+            }
+        }
+
+        sampleSize += samples.size();
+    }
+
+    /**
+     * Add the statistics computed over another set of samples to these statistics, along with the bytes
+     * allocated computing them. Both must have been constructed for the same components.
+     *
+     * @param other the statistics to add
+     */
+    public void add(SufficientStatistics other) {
+        if (other.getComponentSize() != getComponentSize()) {
+            throw new IllegalArgumentException("Statistics have " + other.getComponentSize() +
+                    " components, expected " + getComponentSize());
+        }
+
+        for (int k = 0; k < centers.length; k++) {
+            weights[k] += other.weights[k];
+            weightedSums[k] += other.weightedSums[k];
+            weightedSquareSums[k] += other.weightedSquareSums[k];
+        }
+
+        logLikelihood += other.logLikelihood;
+        sampleSize += other.sampleSize;
+        sampleWeight += other.sampleWeight;
+        allocatedBytes += other.allocatedBytes;
+    }
+
+    /**
+     * Remove the statistics of samples that were added before, computed for the same components. The bytes
+     * allocated computing them are left in, since they were still allocated.
+     *
+     * @param other the statistics of the samples to remove
+     */
+    public void subtract(SufficientStatistics other) {
+        if (other.getComponentSize() != getComponentSize()) {
+            throw new IllegalArgumentException("Statistics have " + other.getComponentSize() +
+                    " components, expected " + getComponentSize());
+        }
+
+        for (int k = 0; k < centers.length; k++) {
+            weights[k] -= other.weights[k];
+            weightedSums[k] -= other.weightedSums[k];
+            weightedSquareSums[k] -= other.weightedSquareSums[k];
+        }
+
+        logLikelihood -= other.logLikelihood;
+        sampleSize -= other.sampleSize;
+        sampleWeight -= other.sampleWeight;
+    }
+
+    /**
+     * Gets the number of components that the statistics were computed for.
+     *
+     * @return the number of components
+     */
+    public int getComponentSize() {
+        return centers.length;
+    }
+
+    /**
+     * Gets the number of samples that contributed to the statistics.
+     *
+     * @return the number of samples
+     */
+    public long getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * Gets the total weight of the samples that contributed to the statistics, which is the number of samples
+     * they stand for.
+     *
+     * @return the total weight of the samples
+     */
+    public double getSampleWeight() {
+        return sampleWeight;
+    }
+
+    /**
+     * Gets the total relative likelihood of all samples for a component, which is approximately the number
+     * of samples that we expect correlate to the component.
+     *
+     * @param k the index of the component
+     * @return the total relative likelihood
+     */
+    public double getWeight(int k) {
+        return weights[k];
+    }
+
+    /**
+     * Gets the average of the samples weighted on correlation to a component.
+     *
+     * @param k the index of the component
+     * @return the weighted mean of the samples
+     */
+    public double getMean(int k) {
+        return centers[k] + weightedSums[k] / weights[k];
+    }
+
+    /**
+     * Gets the average square of the distance between each sample and the weighted mean, weighted on
+     * correlation to a component.
+     *
+     * @param k the index of the component
+     * @return the weighted variance of the samples, never negative
+     */
+    public double getVariance(int k) {
+        double m = weightedSums[k] / weights[k];
+        return Math.max(weightedSquareSums[k] / weights[k] - m * m, 0);
+    }
+
+    /**
+     * Gets the number of bytes allocated by the threads that computed the statistics, wherever in the pool they
+     * ran. Allocations by the workers of a exmax.ShardedSampleStore aren't included.
+     *
+     * @return the number of bytes, or 0 if the JVM can't measure it
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Add to the number of bytes allocated computing the statistics.
+     *
+     * @param bytes the number of bytes
+     */
+    void addAllocatedBytes(long bytes) {
+        allocatedBytes += bytes;
+    }
+
+    /**
+     * Gets the log likelihood of the model that the statistics were computed for.
+     *
+     * @return the log likelihood
+     */
+    public double getLogLikelihood() {
+        return logLikelihood;
+    }
+}
@@ -0,0 +1,545 @@
+package exmax;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * exmax.TextSampleLoader loads a text file of whitespace delimited samples by splitting the file into chunks at
+ * whitespace boundaries and parsing the chunks in parallel, straight from memory mapped bytes. Ordinary decimal
+ * tokens are parsed without creating a String, and tokens that can't be parsed are counted and reported by
+ * their byte offset instead of being dropped silently.
+ */
+public class TextSampleLoader {
+
+    /**
+     * The number of bytes in a chunk, which is kept small enough that a chunk can be mapped on its own.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 << 20;
+
+    /**
+     * The maximum number of malformed token offsets kept in a result.
+     */
+    public static final int MAX_REPORTED_OFFSETS = 16;
+
+    /**
+     * Powers of ten that are exactly representable as doubles.
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * The number of threads used to parse chunks.
+     */
+    private final int parallelism;
+
+    /**
+     * The number of bytes in a chunk.
+     */
+    private final int chunkSize;
+
+    /**
+     * Construct a exmax.TextSampleLoader by passing in the number of threads used to parse chunks.
+     *
+     * @param parallelism the number of threads, greater than or equal to 1
+     */
+    public TextSampleLoader(int parallelism) {
+        this(parallelism, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Construct a exmax.TextSampleLoader by passing in the number of threads and the size of a chunk.
+     *
+     * @param parallelism the number of threads, greater than or equal to 1
+     * @param chunkSize the number of bytes in a chunk, greater than or equal to 1
+     */
+    public TextSampleLoader(int parallelism, int chunkSize) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, but was " + parallelism);
+        }
+
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1, but was " + chunkSize);
+        }
+
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Load the samples from a text file.
+     *
+     * @param filePath the path of the text file
+     * @return the samples and a report of any malformed tokens
+     * @throws IOException
+     */
+    public Result load(String filePath) throws IOException {
+
+        final FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+
+        try {
+
+            // Split the file into chunks, moving each split point forward to the next whitespace.
+            long size = channel.size();
+            List<Long> boundaries = new ArrayList<Long>();
+            boundaries.add(0L);
+            for (long position = chunkSize; position < size; position += chunkSize) {
+                long boundary = findWhitespace(channel, Math.max(position, boundaries.get(boundaries.size() - 1)));
+                if (boundary >= size) {
+                    break;
+                }
+
+                boundaries.add(boundary);
+            }
+
+            boundaries.add(size);
+
+            // Parse every chunk in parallel.
+            List<Future<Chunk>> chunks = new ArrayList<Future<Chunk>>();
+            for (int i = 0; i + 1 < boundaries.size(); i++) {
+                final long start = boundaries.get(i);
+                final long end = boundaries.get(i + 1);
+                chunks.add(executor.submit(new Callable<Chunk>() {
+                    @Override
+                    public Chunk call() throws IOException {
+                        return parseChunk(channel, start, end);
+                    }
+                }));
+            }
+
+            // Join the chunks in file order.
+            List<Chunk> parsed = new ArrayList<Chunk>();
+            long sampleSize = 0;
+            for (Future<Chunk> chunk : chunks) {
+                Chunk c = getChunk(chunk);
+                parsed.add(c);
+                sampleSize += c.sampleSize;
+            }
+
+            if (sampleSize > Integer.MAX_VALUE) {
+                throw new IOException(filePath + " has " + sampleSize + " samples, more than a store can hold");
+            }
+
+            double[] samples = new double[(int) sampleSize];
+            int i = 0;
+            long malformedCount = 0;
+            long[] malformedOffsets = new long[MAX_REPORTED_OFFSETS];
+            int reported = 0;
+            for (Chunk c : parsed) {
+                System.arraycopy(c.samples, 0, samples, i, c.sampleSize);
+                i += c.sampleSize;
+
+                malformedCount += c.malformedCount;
+                for (int j = 0; j < c.reportedOffsets && reported < MAX_REPORTED_OFFSETS; j++) {
+                    malformedOffsets[reported++] = c.malformedOffsets[j];
+                }
+            }
+
+            return new Result(new BasicSampleStore(samples), malformedCount,
+                    Arrays.copyOf(malformedOffsets, reported));
+
+        } finally {
+            executor.shutdownNow();
+            channel.close();
+        }
+    }
+
+    /**
+     * Find the first whitespace byte at or after a position in a file.
+     *
+     * @param channel the channel of the file
+     * @param position the position to start searching from
+     * @return the position of the whitespace, or the size of the file if there is none
+     * @throws IOException
+     */
+    private static long findWhitespace(FileChannel channel, long position) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                return channel.size();
+            }
+
+            for (int i = 0; i < read; i++) {
+                if (isWhitespace(buffer.get(i))) {
+                    return position + i;
+                }
+            }
+
+            position += read;
+        }
+    }
+
+    /**
+     * Parse every token in a chunk of a file.
+     *
+     * @param channel the channel of the file
+     * @param start the position of the first byte in the chunk
+     * @param end the position after the last byte in the chunk
+     * @return the parsed chunk
+     * @throws IOException
+     */
+    private static Chunk parseChunk(FileChannel channel, long start, long end) throws IOException {
+
+        MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        int length = bytes.limit();
+        Chunk chunk = new Chunk(Math.max(16, length / 6));
+
+        int i = 0;
+        while (i < length) {
+
+            // Skip whitespace, then find the end of the token.
+            while (i < length && isWhitespace(bytes.get(i))) {
+                i++;
+            }
+
+            int tokenStart = i;
+            while (i < length && !isWhitespace(bytes.get(i))) {
+                i++;
+            }
+
+            if (tokenStart == i) {
+                break;
+            }
+
+            double sample = parseDouble(bytes, tokenStart, i);
+            if (Double.isNaN(sample) && !isNaNToken(bytes, tokenStart, i)) {
+                chunk.addMalformed(start + tokenStart);
+            } else {
+                chunk.add(sample);
+            }
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Parse a token as a double. Decimal tokens with at most 18 significant digits and a small exponent are
+     * parsed directly from the bytes with exact rounding. Anything else falls back to
+     * {@link Double#parseDouble(String)}.
+     *
+     * @param bytes the bytes containing the token
+     * @param start the index of the first byte of the token
+     * @param end the index after the last byte of the token
+     * @return the parsed value, or NaN if the token isn't a number
+     */
+    public static double parseDouble(ByteBuffer bytes, int start, int end) {
+
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes.get(i) == '-' || bytes.get(i) == '+')) {
+            negative = bytes.get(i) == '-';
+            i++;
+        }
+
+        // Read up to 18 significant digits into the mantissa, tracking the decimal exponent.
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean anyDigits = false;
+        boolean exact = true;
+
+        while (i < end && isDigit(bytes.get(i))) {
+            int d = bytes.get(i++) - '0';
+            anyDigits = true;
+            if (digits < 18) {
+                mantissa = mantissa * 10 + d;
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                exponent++;
+                exact &= d == 0;
+            }
+        }
+
+        if (i < end && bytes.get(i) == '.') {
+            i++;
+            while (i < end && isDigit(bytes.get(i))) {
+                int d = bytes.get(i++) - '0';
+                anyDigits = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + d;
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    exponent--;
+                } else {
+                    exact &= d == 0;
+                }
+            }
+        }
+
+        if (anyDigits && i < end && (bytes.get(i) == 'e' || bytes.get(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (bytes.get(i) == '-' || bytes.get(i) == '+')) {
+                negativeExponent = bytes.get(i) == '-';
+                i++;
+            }
+
+            int value = 0;
+            boolean anyExponentDigits = false;
+            while (i < end && isDigit(bytes.get(i))) {
+                value = Math.min(value * 10 + (bytes.get(i++) - '0'), 100000);
+                anyExponentDigits = true;
+            }
+
+            if (!anyExponentDigits) {
+                return parseDoubleSlowly(bytes, start, end);
+            }
+
+            exponent += negativeExponent ? -value : value;
+        }
+
+        if (!anyDigits || i != end) {
+            return parseDoubleSlowly(bytes, start, end);
+        }
+
+        if (mantissa == 0) {
+            return negative ? -0.0 : 0.0;
+        }
+
+        // The mantissa and the power of ten are both exact, so one operation rounds correctly.
+        if (exact && mantissa < (1L << 53) && exponent >= -22 && exponent <= 22) {
+            double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+            return negative ? -value : value;
+        }
+
+        return parseDoubleSlowly(bytes, start, end);
+    }
+
+    /**
+     * Parse a token as a double by creating a String, for tokens that the direct parser doesn't handle.
+     *
+     * @param bytes the bytes containing the token
+     * @param start the index of the first byte of the token
+     * @param end the index after the last byte of the token
+     * @return the parsed value, or NaN if the token isn't a number
+     */
+    private static double parseDoubleSlowly(ByteBuffer bytes, int start, int end) {
+
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = (char) (bytes.get(i) & 0xff);
+        }
+
+        try {
+            return Double.parseDouble(new String(chars));
+        }
+
+        catch (NumberFormatException ex) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Check whether a token is a literal NaN, to tell it apart from a malformed token.
+     *
+     * @param bytes the bytes containing the token
+     * @param start the index of the first byte of the token
+     * @param end the index after the last byte of the token
+     * @return true if the token is NaN, optionally signed
+     */
+    static boolean isNaNToken(ByteBuffer bytes, int start, int end) {
+        if (end - start == 4 && (bytes.get(start) == '-' || bytes.get(start) == '+')) {
+            start++;
+        }
+
+        return end - start == 3 && bytes.get(start) == 'N' && bytes.get(start + 1) == 'a' &&
+                bytes.get(start + 2) == 'N';
+    }
+
+    /**
+     * Check whether a byte is a decimal digit.
+     *
+     * @param b the byte
+     * @return true if the byte is 0-9
+     */
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * Check whether a byte is whitespace, matching the characters of the \s regular expression class.
+     *
+     * @param b the byte
+     * @return true if the byte is whitespace
+     */
+    static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0x0b;
+    }
+
+    /**
+     * Wait for a parsed chunk, rethrowing any failure on the calling thread.
+     *
+     * @param chunk the future of the chunk
+     * @return the parsed chunk
+     * @throws IOException if the chunk couldn't be read
+     */
+    private static Chunk getChunk(Future<Chunk> chunk) throws IOException {
+        try {
+            return chunk.get();
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while loading samples");
+
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    /**
+     * exmax.TextSampleLoader.Chunk holds the samples and malformed tokens parsed from one chunk of a file.
+     */
+    private static class Chunk {
+
+        /**
+         * The samples parsed from the chunk, which may have unused capacity at the end.
+         */
+        private double[] samples;
+
+        /**
+         * The number of samples parsed from the chunk.
+         */
+        private int sampleSize;
+
+        /**
+         * The number of malformed tokens in the chunk.
+         */
+        private long malformedCount;
+
+        /**
+         * The file offsets of the first malformed tokens in the chunk.
+         */
+        private final long[] malformedOffsets;
+
+        /**
+         * The number of offsets in {@link #malformedOffsets}.
+         */
+        private int reportedOffsets;
+
+        /**
+         * Construct a exmax.TextSampleLoader.Chunk with an initial capacity.
+         *
+         * @param capacity the initial number of samples that fit in the chunk
+         */
+        private Chunk(int capacity) {
+            this.samples = new double[capacity];
+            this.sampleSize = 0;
+            this.malformedCount = 0;
+            this.malformedOffsets = new long[MAX_REPORTED_OFFSETS];
+            this.reportedOffsets = 0;
+        }
+
+        /**
+         * Add a sample, growing the array geometrically.
+         *
+         * @param sample the sample value
+         */
+        private void add(double sample) {
+            if (sampleSize == samples.length) {
+                samples = Arrays.copyOf(samples, samples.length * 2);
+            }
+
+            samples[sampleSize++] = sample;
+        }
+
+        /**
+         * Count a malformed token, keeping its offset if there is room.
+         *
+         * @param offset the file offset of the token
+         */
+        private void addMalformed(long offset) {
+            if (reportedOffsets < MAX_REPORTED_OFFSETS) {
+                malformedOffsets[reportedOffsets++] = offset;
+            }
+
+            malformedCount++;
+        }
+    }
+
+    /**
+     * exmax.TextSampleLoader.Result holds the samples loaded from a text file and a report of the tokens that
+     * couldn't be parsed.
+     */
+    public static class Result {
+
+        /**
+         * The samples loaded from the file.
+         */
+        private final SampleStore samples;
+
+        /**
+         * The number of tokens that couldn't be parsed.
+         */
+        private final long malformedCount;
+
+        /**
+         * The file offsets of the first tokens that couldn't be parsed.
+         */
+        private final long[] malformedOffsets;
+
+        /**
+         * Construct a exmax.TextSampleLoader.Result.
+         *
+         * @param samples the samples loaded from the file
+         * @param malformedCount the number of tokens that couldn't be parsed
+         * @param malformedOffsets the file offsets of the first tokens that couldn't be parsed
+         */
+        public Result(SampleStore samples, long malformedCount, long[] malformedOffsets) {
+            this.samples = samples;
+            this.malformedCount = malformedCount;
+            this.malformedOffsets = malformedOffsets;
+        }
+
+        /**
+         * Gets the samples loaded from the file.
+         *
+         * @return the store of samples
+         */
+        public SampleStore getSamples() {
+            return samples;
+        }
+
+        /**
+         * Gets the number of tokens that couldn't be parsed.
+         *
+         * @return the number of malformed tokens
+         */
+        public long getMalformedCount() {
+            return malformedCount;
+        }
+
+        /**
+         * Gets the file offsets of the first tokens that couldn't be parsed, up to
+         * {@link #MAX_REPORTED_OFFSETS}.
+         *
+         * @return the byte offsets of malformed tokens
+         */
+        public long[] getMalformedOffsets() {
+            return malformedOffsets;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package exmax;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * exmax.VectorLikelihoodKernel provides a exmax.LikelihoodKernel that evaluates as many samples at a time as fit
+ * in the preferred vector register, using the incubating vector API. The JVM must be started with
+ * --add-modules jdk.incubator.vector, otherwise {@link LikelihoodKernels} falls back to the scalar kernel.
+ */
+public class VectorLikelihoodKernel implements LikelihoodKernel {
+
+    /**
+     * The preferred vector shape for doubles on this platform.
+     */
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void evaluateLog(double[] samples, int offset, int length, double mu, double exponentScale,
+                            double logNormalizer, double[] logLikelihoods) {
+
+        DoubleVector scale = DoubleVector.broadcast(SPECIES, -exponentScale);
+        DoubleVector constant = DoubleVector.broadcast(SPECIES, logNormalizer);
+        int i = 0;
+        int bound = SPECIES.loopBound(length);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector d = DoubleVector.fromArray(SPECIES, samples, offset + i).sub(mu);
+            d.mul(d).mul(scale).add(constant).intoArray(logLikelihoods, i);
+        }
+
+        for (; i < length; i++) {
+            double d = samples[offset + i] - mu;
+            logLikelihoods[i] = logNormalizer - d * d * exponentScale;
+        }
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public String getName() {
+        return "vector-" + SPECIES.length() + "x64";
+    }
+}
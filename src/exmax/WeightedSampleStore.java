@@ -0,0 +1,34 @@
+package exmax;
+
+/**
+ * exmax.WeightedSampleStore represents a exmax.SampleStore where each sample stands for a number of identical or
+ * nearby samples, given by its weight. The expectation step counts each sample as many times as its weight, so
+ * the cost of an iteration scales with the number of distinct samples rather than the total.
+ */
+public interface WeightedSampleStore extends SampleStore {
+
+    /**
+     * Gets the weight of the sample at the specified index.
+     *
+     * @param index the index of the sample, from 0 to {@link #size()} - 1
+     * @return the weight of the sample
+     */
+    double getWeight(int index);
+
+    /**
+     * Copies a contiguous range of weights into an array.
+     *
+     * @param index the index of the first weight to copy
+     * @param destination the array to copy the weights into
+     * @param destinationIndex the index in the destination array to copy the first weight to
+     * @param length the number of weights to copy
+     */
+    void copyWeightsTo(int index, double[] destination, int destinationIndex, int length);
+
+    /**
+     * Gets the sum of the weights of every sample in the store, which is the number of samples it stands for.
+     *
+     * @return the total weight
+     */
+    double getTotalWeight();
+}